@@ -0,0 +1,53 @@
+package com.fasterxml.sort;
+
+import com.fasterxml.sort.util.ByteSlice;
+
+/**
+ * Optional hook for collapsing entries that are adjacent in sorted order
+ * into one, like duplicates into an entry with a count. Sorter applies it
+ * to everything it writes (pre-sorted runs, merged runs and results), so
+ * entries combined early never go through later rounds one by one.
+ *<p>
+ * Combined entry must sort in the same position as the entries it
+ * replaces, so that files stay sorted; and since combining is done
+ * in several rounds, combining must be associative (entries may be
+ * combined in any grouping, but always in sorted order).
+ *<p>
+ * Sorters share the one instance they are given among all their writers,
+ * which run on several threads when pre-sorting or merging in parallel.
+ * So an instance must not be shared across threads unless it keeps no
+ * state between calls: no buffers or other per-call data in fields.
+ */
+public abstract class Combiner<T>
+{
+    /**
+     * Method called with two entries, <code>first</code> directly preceding
+     * <code>second</code> in sorted order.
+     *
+     * @return Entry that replaces both; or null if they are not to be combined
+     */
+    public abstract T combine(T first, T second);
+
+    /**
+     * Method for checking whether this combiner supports {@link #combineRaw};
+     * default implementation returns false.
+     */
+    public boolean canCombineRaw() {
+        return false;
+    }
+
+    /**
+     * Raw variant of {@link #combine}, for entries in the raw form of
+     * {@link DataReader#readRaw}. Combined entry is returned in
+     * <code>result</code>, which is owned by the caller: its buffer, if
+     * any, should be reused for building the entry (and replaced with a
+     * bigger one if too small), so that the combiner needs no buffer of
+     * its own.
+     *
+     * @return True if entries were combined
+     */
+    public boolean combineRaw(ByteSlice first, ByteSlice second, ByteSlice result) {
+        throw new UnsupportedOperationException("Combiner of type "+getClass().getName()
+                +" does not support raw entries");
+    }
+}
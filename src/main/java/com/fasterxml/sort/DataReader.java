@@ -2,6 +2,8 @@ package com.fasterxml.sort;
 
 import java.io.IOException;
 
+import com.fasterxml.sort.util.ByteSlice;
+
 public abstract class DataReader<T>
 {
     /**
@@ -23,4 +25,33 @@ public abstract class DataReader<T>
      * close underlying resources as soon as it has reached end of input.
      */
     public abstract void close() throws IOException;
+
+    /*
+    /**********************************************************************
+    /* Optional raw (flyweight) access
+    /**********************************************************************
+     */
+
+    /**
+     * Method for checking whether this reader supports {@link #readRaw};
+     * default implementation returns false.
+     */
+    public boolean canReadRaw() {
+        return false;
+    }
+
+    /**
+     * Method for reading the next entry in its raw (serialized) form,
+     * without constructing an item: given slice is set to refer to the
+     * bytes in a buffer owned by this reader, and is only valid until the
+     * next call to this reader. Raw form is format specific, but must be
+     * accepted by {@link DataWriter#writeRaw} of the matching writer.
+     * Calls may not be mixed with calls to {@link #readNext}.
+     *
+     * @return True if an entry was read; false to indicate end of input
+     */
+    public boolean readRaw(ByteSlice slice) throws IOException {
+        throw new UnsupportedOperationException("DataReader of type "+getClass().getName()
+                +" does not support raw access");
+    }
 }
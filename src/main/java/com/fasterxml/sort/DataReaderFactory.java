@@ -5,4 +5,14 @@ import java.io.*;
 public abstract class DataReaderFactory<T>
 {
     public abstract DataReader<T> constructReader(InputStream in) throws IOException;
-}
\ No newline at end of file
+
+    /**
+     * Method called to construct reader for a whole file, such as a
+     * temporary file written during sorting; default implementation just
+     * opens a stream, but implementations can access file directly (for
+     * example by memory-mapping it).
+     */
+    public DataReader<T> constructReader(File file) throws IOException {
+        return constructReader(new FileInputStream(file));
+    }
+}
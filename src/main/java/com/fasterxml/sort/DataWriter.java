@@ -7,4 +7,21 @@ public abstract class DataWriter<T>
     public abstract void writeEntry(T item) throws IOException;
 
     public abstract void close() throws IOException;
+
+    /**
+     * Method for checking whether this writer supports {@link #writeRaw};
+     * default implementation returns false.
+     */
+    public boolean canWriteRaw() {
+        return false;
+    }
+
+    /**
+     * Method for writing an entry given in its raw form, as returned by
+     * {@link DataReader#readRaw} of the matching reader.
+     */
+    public void writeRaw(byte[] buffer, int offset, int length) throws IOException {
+        throw new UnsupportedOperationException("DataWriter of type "+getClass().getName()
+                +" does not support raw access");
+    }
 }
@@ -1,6 +1,9 @@
 package com.fasterxml.sort;
 
+import com.fasterxml.sort.util.ByteSlice;
 import com.fasterxml.sort.util.CastingIterator;
+import com.fasterxml.sort.util.CombiningIterator;
+import com.fasterxml.sort.util.PackedBuffer;
 import com.fasterxml.sort.util.SegmentedBuffer;
 
 import java.io.Closeable;
@@ -8,6 +11,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
@@ -64,6 +68,10 @@ public class IteratingSorter<T> extends SorterBase<T> implements Closeable
         _sortRoundCount = -1;
         _currentSortRound = -1;
 
+        if (_canPresortPacked(inputReader)) {
+            return _sortPacked(inputReader);
+        }
+
         Iterator<T> iterator = null;
         try {
             Object[] items = _readMax(inputReader, buffer, _config.getMaxMemoryUsage(), null);
@@ -71,7 +79,7 @@ public class IteratingSorter<T> extends SorterBase<T> implements Closeable
                 close();
                 return null;
             }
-            Arrays.sort(items, _rawComparator());
+            _sortItems(items);
             T next = inputReader.readNext();
             /* Minor optimization: in case all entries might fit in
              * in-memory sort buffer, avoid writing intermediate file
@@ -95,8 +103,82 @@ public class IteratingSorter<T> extends SorterBase<T> implements Closeable
                     return null;
                 }
                 _mergerInputs = presorted;
-                _merger = _createMergeReader(merge(presorted));
-                iterator = new MergerIterator<T>(_merger);
+                iterator = _mergeIterator(merge(presorted));
+            }
+        } finally {
+            if (!inputClosed) {
+                try {
+                    inputReader.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+        if (_checkForCancel()) {
+            close();
+            return null;
+        }
+        _phase = Phase.COMPLETE;
+        return _combining(iterator);
+    }
+
+
+    /**
+     * Wraps given result iterator to apply configured {@link Combiner}, if any.
+     */
+    protected Iterator<T> _combining(Iterator<T> iterator)
+    {
+        if (_combiner == null || iterator == null) {
+            return iterator;
+        }
+        return new CombiningIterator<T>(iterator, _combiner);
+    }
+
+    /**
+     * Method called to produce the results of the final merge round.
+     */
+    protected Iterator<T> _mergeIterator(List<File> inputs) throws IOException
+    {
+        _merger = _createMergeReader(inputs);
+        return new MergerIterator<T>(_merger);
+    }
+
+    /**
+     * Variant of {@link #sort(DataReader)} used when entries are pre-sorted
+     * in their raw form, with {@link PackedBuffer}s.
+     */
+    protected Iterator<T> _sortPacked(DataReader<T> inputReader)
+        throws IOException
+    {
+        boolean inputClosed = false;
+        Iterator<T> iterator;
+        try {
+            PackedBuffer buffer = _createPackedBuffer();
+            ByteSlice carry = new ByteSlice();
+            boolean more = buffer.fill(inputReader, carry);
+            if (_checkForCancel()) {
+                close();
+                return null;
+            }
+            buffer.sort();
+            if (!more) {
+                inputClosed = true;
+                inputReader.close();
+                _phase = Phase.SORTING;
+                iterator = _packedIterator(buffer);
+            } else {
+                List<File> presorted = new ArrayList<File>();
+                presorted.add(_writePresorted(buffer));
+                _presortPacked(inputReader, buffer, carry, presorted);
+                inputClosed = true;
+                inputReader.close();
+                _phase = Phase.SORTING;
+                if (_checkForCancel(presorted)) {
+                    close();
+                    return null;
+                }
+                _mergerInputs = presorted;
+                iterator = _mergeIterator(merge(presorted));
             }
         } finally {
             if (!inputClosed) {
@@ -112,9 +194,23 @@ public class IteratingSorter<T> extends SorterBase<T> implements Closeable
             return null;
         }
         _phase = Phase.COMPLETE;
-        return iterator;
+        return _combining(iterator);
     }
 
+    /**
+     * Method called to produce results when all input fit in a single
+     * packed pre-sort buffer. Since there are no items to iterate over,
+     * default implementation writes the buffer in a file that is then read.
+     */
+    protected Iterator<T> _packedIterator(PackedBuffer buffer) throws IOException
+    {
+        if (buffer.size() == 0) {
+            return Collections.<T>emptyList().iterator();
+        }
+        _mergerInputs = new ArrayList<File>();
+        _mergerInputs.add(_writePresorted(buffer));
+        return _mergeIterator(_mergerInputs);
+    }
 
     /*
     /**********************************************************************
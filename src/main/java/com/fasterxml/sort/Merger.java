@@ -3,6 +3,8 @@ package com.fasterxml.sort;
 import java.io.IOException;
 import java.util.*;
 
+import com.fasterxml.sort.util.ByteSlice;
+
 /**
  * Object used to merge items from multiple input sources into one.
  */
@@ -47,6 +49,52 @@ public abstract class Merger<T>
         return mergedReader(cmp, readers);
     }
 
+    /**
+     * Alternative to {@link #mergedReader} that merges all inputs with a
+     * single {@link TournamentMerger}, instead of a tree of
+     * {@link PairwiseMerger}s. Output is the same, including the order of
+     * entries that compare equal (earlier input first).
+     */
+    public static <T> DataReader<T> tournamentReader(Comparator<T> cmp, List<DataReader<T>> inputs)
+        throws IOException
+    {
+        switch (inputs.size()) {
+        case 0:
+            throw new IllegalArgumentException("Can not pass empty DataReader array");
+        case 1:
+            return inputs.get(0);
+        }
+        return new TournamentMerger<T>(cmp, inputs);
+    }
+
+    /**
+     * Merges entries of all inputs, in their raw form, into given writer,
+     * without constructing items: bytes are moved from reader buffers to
+     * the writer as is. Order is the same as with {@link #tournamentReader}.
+     * All readers must support {@link DataReader#readRaw}, and writer
+     * {@link DataWriter#writeRaw}; neither is closed by this method.
+     *
+     * @return Number of entries written
+     */
+    public static <T> long mergeRaw(RawComparator cmp, List<DataReader<T>> inputs, DataWriter<T> out)
+        throws IOException
+    {
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("Can not pass empty DataReader array");
+        }
+        return new RawTournament<T>(cmp, inputs).writeAll(out);
+    }
+
+    /**
+     * Helper for copying readers into an array, which can not be created
+     * with a type parameter.
+     */
+    @SuppressWarnings("unchecked")
+    protected static <T> DataReader<T>[] _toArray(List<DataReader<T>> readers)
+    {
+        return readers.toArray((DataReader<T>[]) new DataReader<?>[readers.size()]);
+    }
+
     /*
     /********************************************************************** 
     /* Concrete implementations
@@ -121,4 +169,228 @@ public abstract class Merger<T>
             }
         }
     }
+
+    /**
+     * Merger that uses a tournament tree of losers: every entry read costs
+     * about log2(k) comparisons, done in one loop without going through
+     * intermediate readers.
+     */
+    protected static class TournamentMerger<T>
+        extends Merger<T>
+    {
+        protected final DataReader<T>[] _readers;
+
+        /**
+         * Current head entry of each reader; null once reader is exhausted
+         */
+        protected final Object[] _heads;
+
+        /**
+         * Index of losing reader at each internal node; slot 0 holds
+         * the overall winner.
+         */
+        protected final int[] _tree;
+
+        protected boolean _closed;
+
+        public TournamentMerger(Comparator<T> comparator, List<DataReader<T>> readers)
+            throws IOException
+        {
+            super(comparator);
+            final int k = readers.size();
+            _readers = _toArray(readers);
+            _heads = new Object[k];
+            for (int i = 0; i < k; ++i) {
+                _heads[i] = _readers[i].readNext();
+            }
+            _tree = new int[k];
+            _tree[0] = _build(1);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T readNext() throws IOException
+        {
+            final int winner = _tree[0];
+            final T result = (T) _heads[winner];
+            if (result == null) { // winner exhausted means all are
+                close();
+                return null;
+            }
+            _heads[winner] = _readers[winner].readNext();
+
+            // and replay matches from the winner's leaf up to the root
+            final int[] tree = _tree;
+            final Object[] heads = _heads;
+            final Comparator<T> cmp = _comparator;
+            int w = winner;
+            T wv = (T) heads[w];
+            for (int node = (winner + tree.length) >> 1; node > 0; node >>= 1) {
+                int other = tree[node];
+                T ov = (T) heads[other];
+                if (ov == null) { // exhausted, always loses
+                    continue;
+                }
+                int diff;
+                if (wv == null || (diff = cmp.compare(ov, wv)) < 0 || (diff == 0 && other < w)) {
+                    tree[node] = w;
+                    w = other;
+                    wv = ov;
+                }
+            }
+            tree[0] = w;
+            return result;
+        }
+
+        @Override
+        public int estimateSizeInBytes(T item) {
+            // should not matter so
+            return _readers[0].estimateSizeInBytes(item);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (!_closed) {
+                _closed = true;
+                for (DataReader<T> reader : _readers) {
+                    reader.close();
+                }
+            }
+        }
+
+        /**
+         * Plays matches of the subtree rooted at given node (leaves being
+         * nodes <code>k</code> to <code>2k-1</code>), storing the losers
+         * and returning the winner.
+         */
+        private int _build(int node)
+        {
+            final int k = _tree.length;
+            if (node >= k) {
+                return node - k;
+            }
+            int left = _build(node << 1);
+            int right = _build((node << 1) + 1);
+            if (_less(right, left)) {
+                _tree[node] = left;
+                return right;
+            }
+            _tree[node] = right;
+            return left;
+        }
+
+        /**
+         * Whether head of reader <code>a</code> goes before that of
+         * <code>b</code>: exhausted readers go last, ties go to the
+         * earlier reader.
+         */
+        @SuppressWarnings("unchecked")
+        private boolean _less(int a, int b)
+        {
+            Object ha = _heads[a];
+            Object hb = _heads[b];
+            if (ha == null) {
+                return false;
+            }
+            if (hb == null) {
+                return true;
+            }
+            int diff = _comparator.compare((T) ha, (T) hb);
+            return (diff < 0) || (diff == 0 && a < b);
+        }
+    }
+
+    /**
+     * Tournament tree like {@link TournamentMerger}, but over raw entries:
+     * each reader's head is a {@link ByteSlice} into its own buffer, which
+     * stays valid until the reader is advanced.
+     */
+    protected static class RawTournament<T>
+    {
+        protected final RawComparator _comparator;
+
+        protected final DataReader<T>[] _readers;
+
+        protected final ByteSlice[] _heads;
+
+        /**
+         * Whether reader still has its head entry
+         */
+        protected final boolean[] _live;
+
+        protected final int[] _tree;
+
+        public RawTournament(RawComparator comparator, List<DataReader<T>> readers)
+            throws IOException
+        {
+            _comparator = comparator;
+            final int k = readers.size();
+            _readers = _toArray(readers);
+            _heads = new ByteSlice[k];
+            _live = new boolean[k];
+            for (int i = 0; i < k; ++i) {
+                _heads[i] = new ByteSlice();
+                _live[i] = _readers[i].readRaw(_heads[i]);
+            }
+            _tree = new int[k];
+            _tree[0] = _build(1);
+        }
+
+        public long writeAll(DataWriter<T> out) throws IOException
+        {
+            final int[] tree = _tree;
+            final ByteSlice[] heads = _heads;
+            final boolean[] live = _live;
+            long count = 0L;
+            int w = tree[0];
+            while (live[w]) {
+                ByteSlice head = heads[w];
+                out.writeRaw(head.getBuffer(), head.getOffset(), head.getLength());
+                ++count;
+                live[w] = _readers[w].readRaw(head);
+                // replay matches from the winner's leaf up to the root
+                for (int node = (w + tree.length) >> 1; node > 0; node >>= 1) {
+                    int other = tree[node];
+                    if (_less(other, w)) {
+                        tree[node] = w;
+                        w = other;
+                    }
+                }
+                tree[0] = w;
+            }
+            return count;
+        }
+
+        private int _build(int node)
+        {
+            final int k = _tree.length;
+            if (node >= k) {
+                return node - k;
+            }
+            int left = _build(node << 1);
+            int right = _build((node << 1) + 1);
+            if (_less(right, left)) {
+                _tree[node] = left;
+                return right;
+            }
+            _tree[node] = right;
+            return left;
+        }
+
+        private boolean _less(int a, int b)
+        {
+            if (!_live[a]) {
+                return false;
+            }
+            if (!_live[b]) {
+                return true;
+            }
+            ByteSlice ha = _heads[a];
+            ByteSlice hb = _heads[b];
+            int diff = _comparator.compareRaw(ha.getBuffer(), ha.getOffset(), ha.getLength(),
+                    hb.getBuffer(), hb.getOffset(), hb.getLength());
+            return (diff < 0) || (diff == 0 && a < b);
+        }
+    }
 }
@@ -0,0 +1,14 @@
+package com.fasterxml.sort;
+
+/**
+ * Interface that a {@link java.util.Comparator} can additionally implement
+ * if it can compare entries in their raw form, as read by
+ * {@link DataReader#readRaw}, giving the same order as for the items
+ * themselves. Sorters use it to merge such entries without constructing
+ * items at all.
+ */
+public interface RawComparator
+{
+    public int compareRaw(byte[] b1, int offset1, int length1,
+            byte[] b2, int offset2, int length2);
+}
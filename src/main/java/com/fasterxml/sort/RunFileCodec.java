@@ -0,0 +1,25 @@
+package com.fasterxml.sort;
+
+import java.io.*;
+
+/**
+ * Abstract class for objects that encode temporary files written during
+ * pre-sort and non-final merge phases, typically to compress them. Codecs
+ * only wrap streams, so they work with any {@link DataReaderFactory} and
+ * {@link DataWriterFactory}; but some (like front coding of lines) only
+ * make sense for specific data formats.
+ */
+public abstract class RunFileCodec
+{
+    /**
+     * Method called to wrap stream used for writing a temporary file;
+     * closing returned stream must close the underlying stream.
+     */
+    public abstract OutputStream encode(OutputStream out) throws IOException;
+
+    /**
+     * Method called to wrap stream used for reading a temporary file
+     * written using stream returned by {@link #encode}.
+     */
+    public abstract InputStream decode(InputStream in) throws IOException;
+}
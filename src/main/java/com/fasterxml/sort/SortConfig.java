@@ -9,6 +9,43 @@ import com.fasterxml.sort.std.StdTempFileProvider;
  */
 public class SortConfig
 {
+    /**
+     * Implementations available for merging sorted runs.
+     */
+    public enum MergerType {
+        /**
+         * Binary tree of pairwise mergers, see {@link Merger#mergedReader}
+         */
+        PAIRWISE,
+
+        /**
+         * Single tournament tree of losers, see {@link Merger#tournamentReader}
+         */
+        TOURNAMENT
+    }
+
+    /**
+     * Ways of buffering entries for pre-sorting.
+     */
+    public enum PresortMode {
+        /**
+         * Entries are read and sorted as objects; memory usage is estimated
+         * with {@link DataReader#estimateSizeInBytes}
+         */
+        OBJECTS,
+
+        /**
+         * Entries are packed in raw form into large heap buffers, see
+         * {@link com.fasterxml.sort.util.PackedBuffer}
+         */
+        PACKED,
+
+        /**
+         * Like {@link #PACKED}, but with direct (off-heap) buffers
+         */
+        PACKED_DIRECT
+    }
+
     /**
      * By default we will use 40 megs for pre-sorting.
      */
@@ -25,6 +62,22 @@ public class SortConfig
     
     protected TempFileProvider _tempFileProvider;
 
+    protected int _presortThreads;
+
+    protected MergerType _mergerType;
+
+    protected int _mergeThreads;
+
+    protected RunFileCodec _runFileCodec;
+
+    protected PresortMode _presortMode;
+
+    protected int _asyncWriteBufferSize;
+
+    protected int _asyncReadBufferSize;
+
+    protected SortPlan _plan;
+
     /*
     /************************************************************************
     /* Construction
@@ -36,23 +89,45 @@ public class SortConfig
         _mergeFactor = DEFAULT_MERGE_FACTOR;
         _maxMemoryUsage = DEFAULT_MEMORY_USAGE;
         _tempFileProvider = new StdTempFileProvider();
+        _presortThreads = 1;
+        _mergerType = MergerType.PAIRWISE;
+        _mergeThreads = 1;
+        _runFileCodec = null;
+        _presortMode = PresortMode.OBJECTS;
+        _asyncWriteBufferSize = 0;
+        _asyncReadBufferSize = 0;
+        _plan = null;
     }
 
-    protected SortConfig(SortConfig base, int mergeFactor) {
+    /**
+     * Copy constructor used by fluent methods; copies all settings.
+     */
+    protected SortConfig(SortConfig base) {
+        _mergeFactor = base._mergeFactor;
         _maxMemoryUsage = base._maxMemoryUsage;
-        _mergeFactor = mergeFactor;
         _tempFileProvider = base._tempFileProvider;
+        _presortThreads = base._presortThreads;
+        _mergerType = base._mergerType;
+        _mergeThreads = base._mergeThreads;
+        _runFileCodec = base._runFileCodec;
+        _presortMode = base._presortMode;
+        _asyncWriteBufferSize = base._asyncWriteBufferSize;
+        _asyncReadBufferSize = base._asyncReadBufferSize;
+        _plan = base._plan;
+    }
+
+    protected SortConfig(SortConfig base, int mergeFactor) {
+        this(base);
+        _mergeFactor = mergeFactor;
     }
     
     protected SortConfig(SortConfig base, long maxMem) {
+        this(base);
         _maxMemoryUsage = maxMem;
-        _mergeFactor = base._mergeFactor;
-        _tempFileProvider = base._tempFileProvider;
     }
 
     protected SortConfig(SortConfig base, TempFileProvider prov) {
-        _mergeFactor = base._mergeFactor;
-        _maxMemoryUsage = base._maxMemoryUsage;
+        this(base);
         _tempFileProvider = prov;
     }
     
@@ -67,6 +142,26 @@ public class SortConfig
     public long getMaxMemoryUsage() { return _maxMemoryUsage; }
 
     public TempFileProvider getTempFileProvider() { return _tempFileProvider; }
+
+    public int getPresortThreads() { return _presortThreads; }
+
+    public MergerType getMergerType() { return _mergerType; }
+
+    public int getMergeThreads() { return _mergeThreads; }
+
+    public RunFileCodec getRunFileCodec() { return _runFileCodec; }
+
+    public PresortMode getPresortMode() { return _presortMode; }
+
+    public int getAsyncWriteBufferSize() { return _asyncWriteBufferSize; }
+
+    public int getAsyncReadBufferSize() { return _asyncReadBufferSize; }
+
+    /**
+     * @return Plan settings were last derived from with {@link #withPlan},
+     *   if any
+     */
+    public SortPlan getPlan() { return _plan; }
     
     /*
     /************************************************************************
@@ -90,6 +185,23 @@ public class SortConfig
         return new SortConfig(this, maxMem);
     }
 
+    /**
+     * Method for constructing configuration instance that merges given
+     * number of files at a time.
+     * 
+     * @param mergeFactor Number of files to merge at once; at least 2
+     */
+    public SortConfig withMergeFactor(int mergeFactor)
+    {
+        if (mergeFactor < 2) {
+            throw new IllegalArgumentException("Merge factor must be at least 2, got "+mergeFactor);
+        }
+        if (mergeFactor == _mergeFactor) {
+            return this;
+        }
+        return new SortConfig(this, mergeFactor);
+    }
+
     public SortConfig withTempFileProvider(TempFileProvider provider)
     {
         if (provider == _tempFileProvider) {
@@ -98,4 +210,152 @@ public class SortConfig
         return new SortConfig(this, provider);
     }
 
+    /**
+     * Method for constructing configuration instance that sorts and writes
+     * pre-sorted runs with given number of background threads, while the
+     * calling thread keeps reading input. Memory limit still applies to all
+     * runs in flight together, so each run gets
+     * <code>maxMemoryUsage / (threads + 1)</code>.
+     * 
+     * @param threads Number of pre-sort threads; 1 (default) means that
+     *   reading, sorting and writing are all done by the calling thread
+     */
+    public SortConfig withPresortThreads(int threads)
+    {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of pre-sort threads must be at least 1, got "+threads);
+        }
+        if (threads == _presortThreads) {
+            return this;
+        }
+        SortConfig config = new SortConfig(this);
+        config._presortThreads = threads;
+        return config;
+    }
+
+    public SortConfig withMergerType(MergerType type)
+    {
+        if (type == _mergerType) {
+            return this;
+        }
+        SortConfig config = new SortConfig(this);
+        config._mergerType = type;
+        return config;
+    }
+
+    /**
+     * Method for constructing configuration instance that runs the merges
+     * of each intermediate round (groups of <code>mergeFactor</code>
+     * pre-sorted files) on given number of threads. Groups are independent,
+     * so this helps when storage can serve several streams concurrently;
+     * the final merge is always done by the calling thread.
+     * 
+     * @param threads Number of merge threads; 1 (default) merges groups
+     *   one after another
+     */
+    public SortConfig withMergeThreads(int threads)
+    {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of merge threads must be at least 1, got "+threads);
+        }
+        if (threads == _mergeThreads) {
+            return this;
+        }
+        SortConfig config = new SortConfig(this);
+        config._mergeThreads = threads;
+        return config;
+    }
+
+    /**
+     * Method for constructing configuration instance that encodes (usually
+     * compresses) temporary files written by pre-sort and intermediate
+     * merge rounds with given codec.
+     * 
+     * @param codec Codec to use; null (default) means that temporary files
+     *   are written as is
+     */
+    public SortConfig withRunFileCodec(RunFileCodec codec)
+    {
+        if (codec == _runFileCodec) {
+            return this;
+        }
+        SortConfig config = new SortConfig(this);
+        config._runFileCodec = codec;
+        return config;
+    }
+
+    /**
+     * Method for constructing configuration instance that buffers entries
+     * for pre-sorting in given way. Packed modes only take effect if input
+     * reader supports {@link DataReader#readRaw} and comparator implements
+     * {@link RawComparator}; writers of pre-sorted files must then support
+     * {@link DataWriter#writeRaw}.
+     * 
+     * @param mode Pre-sort mode; {@link PresortMode#OBJECTS} by default
+     */
+    public SortConfig withPresortMode(PresortMode mode)
+    {
+        if (mode == _presortMode) {
+            return this;
+        }
+        SortConfig config = new SortConfig(this);
+        config._presortMode = mode;
+        return config;
+    }
+
+    /**
+     * Method for constructing configuration instance that writes and reads
+     * temporary files on background threads, so that sorting and merging
+     * continue while data is transferred. Each run file being written gets
+     * two buffers of <code>writeBufferSize</code> bytes, and each file being
+     * merged two buffers of <code>readBufferSize</code> bytes, in addition
+     * to memory used for pre-sorting.
+     *<p>
+     * Note that read-ahead replaces any file-specific access of the reader
+     * factory (like memory mapping): run files are always read as streams.
+     * 
+     * @param writeBufferSize Size of write buffers; 0 (default) means that
+     *   run files are written by the sorting thread
+     * @param readBufferSize Size of read-ahead buffers; 0 (default) means
+     *   that run files are read by the merging thread
+     */
+    public SortConfig withAsyncIO(int writeBufferSize, int readBufferSize)
+    {
+        if (writeBufferSize < 0 || readBufferSize < 0) {
+            throw new IllegalArgumentException("Buffer sizes can not be negative, got "
+                    +writeBufferSize+" and "+readBufferSize);
+        }
+        if (writeBufferSize == _asyncWriteBufferSize && readBufferSize == _asyncReadBufferSize) {
+            return this;
+        }
+        SortConfig config = new SortConfig(this);
+        config._asyncWriteBufferSize = writeBufferSize;
+        config._asyncReadBufferSize = readBufferSize;
+        return config;
+    }
+
+    /**
+     * Method for constructing configuration instance with memory usage,
+     * merge factor and (if reading is asynchronous) read buffer size
+     * chosen by a {@link SortPlan} for given memory and input size, taking
+     * into account merge threads and the limit on open files. Plan is
+     * available from {@link #getPlan}, to log or check the decisions.
+     * 
+     * @param memory Memory available for sorting, in bytes
+     * @param inputSize Size of input in bytes, or an estimate
+     */
+    public SortConfig withPlan(long memory, long inputSize)
+    {
+        int buffersPerInput = (_asyncReadBufferSize > 0) ? 2 : 1;
+        SortPlan plan = new SortPlan(memory, inputSize, SortPlan.availableFileHandles(),
+                _mergeThreads, buffersPerInput);
+        SortConfig config = new SortConfig(this);
+        config._plan = plan;
+        config._maxMemoryUsage = plan.getPresortMemory();
+        config._mergeFactor = plan.getMergeFactor();
+        if (_asyncReadBufferSize > 0) {
+            config._asyncReadBufferSize = plan.getReadBufferSize();
+        }
+        return config;
+    }
 }
@@ -0,0 +1,153 @@
+package com.fasterxml.sort;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Sizing decisions for a sort, derived from memory available for it, size
+ * of input and number of files that can be opened: how much memory to use
+ * for pre-sorting, how many files to merge at once, and how big read
+ * buffers merge inputs get. Created by {@link SortConfig#withPlan}.
+ *<p>
+ * Pre-sorting gets the whole budget, since merging only starts after it.
+ * Merge factor is then chosen as the smallest one (but not below the
+ * default) that still needs the fewest merge rounds possible for up to
+ * twice the estimated number of pre-sorted files, within limits on memory
+ * (each input needs at least {@link #MIN_READ_BUFFER_SIZE} bytes of
+ * buffers) and on open files (half of those still available to the
+ * process). Memory left over goes to larger read buffers, for more
+ * sequential disk access.
+ */
+public class SortPlan
+{
+    /**
+     * Rough ratio of memory used by pre-sorting to size of input, for
+     * estimating number of pre-sorted files.
+     */
+    public final static double PRESORT_EXPANSION = 2.0;
+
+    public final static int MIN_READ_BUFFER_SIZE = 64 * 1024;
+
+    public final static int MAX_READ_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Limit for open files used when platform does not tell
+     */
+    public final static long DEFAULT_MAX_OPEN_FILES = 1024;
+
+    protected final long _memory;
+
+    protected final long _inputSize;
+
+    protected final long _maxOpenFiles;
+
+    protected final long _presortMemory;
+
+    protected final int _estimatedRuns;
+
+    protected final int _mergeFactor;
+
+    protected final int _rounds;
+
+    protected final int _readBufferSize;
+
+    protected SortPlan(long memory, long inputSize, long maxOpenFiles, int mergeThreads, int buffersPerInput)
+    {
+        _memory = memory;
+        _inputSize = inputSize;
+        _maxOpenFiles = maxOpenFiles;
+        _presortMemory = memory;
+
+        int runs = (int) Math.min(Integer.MAX_VALUE,
+                (long) Math.ceil(inputSize * PRESORT_EXPANSION / Math.max(1L, memory)));
+        _estimatedRuns = Math.max(1, runs);
+
+        // concurrent intermediate merges share both limits; one more file is output
+        long byMemory = memory / mergeThreads / ((long) buffersPerInput * MIN_READ_BUFFER_SIZE);
+        long byFiles = maxOpenFiles / mergeThreads - 1;
+        int maxFactor = (int) Math.max(2L, Math.min(Integer.MAX_VALUE, Math.min(byMemory, byFiles)));
+
+        // leave room for twice the estimate, so a low one does not add a round
+        int target = (int) Math.min(Integer.MAX_VALUE, 2L * _estimatedRuns);
+        int rounds = SorterBase._calculateRoundCount(target, maxFactor);
+        // no point going below default: fewer inputs only buy bigger buffers
+        int factor = Math.min(maxFactor, SortConfig.DEFAULT_MERGE_FACTOR);
+        while (factor < maxFactor && SorterBase._calculateRoundCount(target, factor) > rounds) {
+            ++factor;
+        }
+        _mergeFactor = factor;
+        _rounds = SorterBase._calculateRoundCount(_estimatedRuns, factor);
+
+        long buffer = memory / mergeThreads / ((long) buffersPerInput * factor);
+        _readBufferSize = (int) Math.max(MIN_READ_BUFFER_SIZE, Math.min(MAX_READ_BUFFER_SIZE, buffer));
+    }
+
+    /**
+     * Name of the platform MXBean interface that reports file descriptors;
+     * looked up by name, since not all JDKs have it.
+     */
+    protected final static String UNIX_OS_BEAN = "com.sun.management.UnixOperatingSystemMXBean";
+
+    /**
+     * Number of files this process can still open: half of what is left
+     * under the limit, if platform reports it, to leave room for others.
+     */
+    public static long availableFileHandles()
+    {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        try {
+            Class<?> unix = Class.forName(UNIX_OS_BEAN);
+            if (unix.isInstance(os)) {
+                Method max = unix.getMethod("getMaxFileDescriptorCount");
+                Method open = unix.getMethod("getOpenFileDescriptorCount");
+                long left = ((Long) max.invoke(os)) - ((Long) open.invoke(os));
+                if (left > 0) {
+                    return left >> 1;
+                }
+            }
+        } catch (ReflectiveOperationException e) {
+            // not available: use default
+        } catch (SecurityException e) {
+            // same
+        }
+        return DEFAULT_MAX_OPEN_FILES;
+    }
+
+    /*
+    /**********************************************************************
+    /* Accessors
+    /**********************************************************************
+     */
+
+    /**
+     * @return Memory budget the plan was made for
+     */
+    public long getMemory() { return _memory; }
+
+    public long getInputSize() { return _inputSize; }
+
+    public long getMaxOpenFiles() { return _maxOpenFiles; }
+
+    public long getPresortMemory() { return _presortMemory; }
+
+    public int getEstimatedRuns() { return _estimatedRuns; }
+
+    public int getMergeFactor() { return _mergeFactor; }
+
+    /**
+     * @return Estimated number of merge rounds, including the final one
+     */
+    public int getRounds() { return _rounds; }
+
+    public int getReadBufferSize() { return _readBufferSize; }
+
+    @Override
+    public String toString()
+    {
+        return String.format("memory %d MB, input %d MB, open files %d: presort %d MB"
+                +" -> ~%d runs, merge factor %d, %d round(s), read buffers %d kB",
+                _memory >> 20, _inputSize >> 20, _maxOpenFiles, _presortMemory >> 20,
+                _estimatedRuns, _mergeFactor, _rounds, _readBufferSize >> 10);
+    }
+}
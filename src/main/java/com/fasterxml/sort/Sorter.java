@@ -1,10 +1,15 @@
 package com.fasterxml.sort;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+
+import com.fasterxml.sort.util.PackedBuffer;
 
 /**
  * Main entry point for sorting functionality; object that drives
@@ -15,6 +20,17 @@ import java.util.Iterator;
  */
 public class Sorter<T> extends IteratingSorter<T>
 {
+    /**
+     * Writer of the sort currently in progress, if final merge round may
+     * write into it directly
+     */
+    protected DataWriter<T> _resultWriter;
+
+    /**
+     * Whether final merge round wrote (and closed) {@link #_resultWriter}
+     */
+    protected boolean _resultWritten;
+
     /**
      * @param config Configuration for the sorter
      * @param readerFactory Factory used for creating readers for pre-sorted data;
@@ -82,19 +98,62 @@ public class Sorter<T> extends IteratingSorter<T>
     public boolean sort(DataReader<T> inputReader, DataWriter<T> resultWriter)
         throws IOException
     {
-        Iterator<T> it = super.sort(inputReader);
+        Iterator<T> it;
+        _resultWriter = resultWriter;
+        _resultWritten = false;
+        try {
+            it = super.sort(inputReader);
+        } finally {
+            _resultWriter = null;
+        }
         if(it == null) {
             return false;
         }
         try {
-            while(it.hasNext()) {
-                T value = it.next();
-                resultWriter.writeEntry(value);
+            if (!_resultWritten) {
+                while(it.hasNext()) {
+                    T value = it.next();
+                    resultWriter.writeEntry(value);
+                }
+                resultWriter.close();
             }
-            resultWriter.close();
         } finally {
             super.close();
         }
         return true;
     }
+
+    /**
+     * Overridden to merge entries in their raw form straight into the
+     * result writer, when possible, instead of going through an iterator.
+     */
+    @Override
+    protected Iterator<T> _mergeIterator(List<File> inputs) throws IOException
+    {
+        if (_resultWriter != null && _combining(_resultWriter).canWriteRaw()
+                && _comparator instanceof RawComparator) {
+            // not yet known whether readers allow raw access; _merge checks
+            _merge(inputs, _resultWriter);
+            _resultWritten = true;
+            return Collections.<T>emptyList().iterator();
+        }
+        return super._mergeIterator(inputs);
+    }
+
+    /**
+     * Overridden to write entries of a single packed buffer straight into
+     * the result writer, when possible.
+     */
+    @Override
+    protected Iterator<T> _packedIterator(PackedBuffer buffer) throws IOException
+    {
+        DataWriter<T> writer = (_resultWriter == null) ? null : _combining(_resultWriter);
+        if (writer != null && writer.canWriteRaw()) {
+            buffer.writeTo(writer);
+            writer.close();
+            _resultWritten = true;
+            return Collections.<T>emptyList().iterator();
+        }
+        return super._packedIterator(buffer);
+    }
 }
@@ -1,9 +1,29 @@
 package com.fasterxml.sort;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.fasterxml.sort.std.ByteArrayComparator;
+import com.fasterxml.sort.util.AsyncOutputStream;
+import com.fasterxml.sort.util.ByteSlice;
+import com.fasterxml.sort.util.CombiningWriter;
+import com.fasterxml.sort.util.PackedBuffer;
+import com.fasterxml.sort.util.PrefetchInputStream;
+import com.fasterxml.sort.util.RadixSort;
+import com.fasterxml.sort.util.RunFileReader;
 import com.fasterxml.sort.util.SegmentedBuffer;
 
 public abstract class SorterBase<T>
@@ -36,6 +56,11 @@ public abstract class SorterBase<T>
      * Comparator to use for sorting entries; defaults to 'C
      */
     protected Comparator<T> _comparator;
+
+    /**
+     * Optional combiner applied to entries written; null if none
+     */
+    protected Combiner<T> _combiner;
     
     /*
     /********************************************************************** 
@@ -83,6 +108,23 @@ public abstract class SorterBase<T>
         this(config, null, null, null);
     }
 
+    /**
+     * Method for setting {@link Combiner} to apply to entries whenever
+     * they are written, in sorted order, to pre-sorted or merged files
+     * and to results. Combiner is used by all writers, on several threads
+     * if pre-sorting or merging runs in parallel, so it must keep no state
+     * between calls (see {@link Combiner}).
+     *
+     * @param combiner Combiner to use; null (default) for none
+     */
+    public void setCombiner(Combiner<T> combiner) {
+        _combiner = combiner;
+    }
+
+    public Combiner<T> getCombiner() {
+        return _combiner;
+    }
+
     /*
     /********************************************************************** 
     /* SortingState implementation
@@ -201,12 +243,192 @@ public abstract class SorterBase<T>
             List<File> presorted)
         throws IOException
     {
-        do {
-            Object[] items = _readMax(inputReader, buffer, _config.getMaxMemoryUsage(), nextValue);
+        boolean success = false;
+        try {
+            if (_config.getPresortThreads() > 1) {
+                _presortInParallel(inputReader, buffer, nextValue, presorted);
+            } else {
+                do {
+                    Object[] items = _readMax(inputReader, buffer, _config.getMaxMemoryUsage(), nextValue);
+                    _sortItems(items);
+                    presorted.add(_writePresorted(items));
+                    nextValue = inputReader.readNext();
+                } while (nextValue != null);
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                _deleteAll(presorted);
+            }
+        }
+    }
+
+    /**
+     * Variant of {@link #_presort} used with more than one pre-sort thread:
+     * calling thread keeps reading input, while earlier buffers are sorted
+     * and written by a thread pool. A semaphore limits the number of buffers
+     * in flight, so that together with the one being read they stay within
+     * configured memory usage.
+     *<p>
+     * Failed tasks are noticed before each buffer is read, so that a failure
+     * stops reading of input; files written by other tasks are then deleted.
+     */
+    protected void _presortInParallel(DataReader<T> inputReader, SegmentedBuffer buffer, T nextValue,
+            List<File> presorted)
+        throws IOException
+    {
+        final int threads = _config.getPresortThreads();
+        final long memoryPerBuffer = _config.getMaxMemoryUsage() / (threads + 1);
+        final Semaphore inFlight = new Semaphore(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<File> completion = new ExecutorCompletionService<File>(executor);
+        List<Future<File>> results = new ArrayList<Future<File>>();
+        boolean success = false;
+        try {
+            do {
+                _acquire(inFlight);
+                _checkCompleted(completion);
+                final Object[] items;
+                try {
+                    items = _readMax(inputReader, buffer, memoryPerBuffer, nextValue);
+                } catch (IOException e) {
+                    inFlight.release();
+                    throw e;
+                }
+                results.add(completion.submit(new Callable<File>() {
+                    @Override
+                    public File call() throws IOException {
+                        try {
+                            _sortItems(items);
+                            return _writePresorted(items);
+                        } finally {
+                            inFlight.release();
+                        }
+                    }
+                }));
+                nextValue = inputReader.readNext();
+            } while (nextValue != null);
+            // results are added in input order, to keep merge order deterministic
+            List<File> files = new ArrayList<File>(results.size());
+            for (Future<File> result : results) {
+                files.add(_get(result));
+            }
+            presorted.addAll(files);
+            success = true;
+        } finally {
+            if (success) {
+                executor.shutdownNow();
+            } else {
+                _abandon(executor, results);
+            }
+        }
+    }
+
+    /**
+     * Sorts entries of a pre-sort buffer: byte arrays in natural order are
+     * radix sorted, everything else with given comparator.
+     */
+    protected void _sortItems(Object[] items)
+    {
+        if (_isBytewise()) {
+            RadixSort.sort(items);
+        } else {
             Arrays.sort(items, _rawComparator());
-            presorted.add(_writePresorted(items));
-            nextValue = inputReader.readNext();
-        } while (nextValue != null);
+        }
+    }
+
+    /**
+     * Whether entries are sorted in natural byte order, i.e. with (exactly)
+     * {@link ByteArrayComparator}
+     */
+    protected boolean _isBytewise() {
+        return (_comparator != null) && (_comparator.getClass() == ByteArrayComparator.class);
+    }
+
+    protected static void _acquire(Semaphore semaphore) throws IOException
+    {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException ie = new InterruptedIOException();
+            ie.initCause(e);
+            throw ie;
+        }
+    }
+
+    /**
+     * Helper method for re-throwing failure of any task completed so far;
+     * results of successful ones are collected later, in submission order.
+     */
+    protected static void _checkCompleted(CompletionService<File> completion) throws IOException
+    {
+        Future<File> done;
+        while ((done = completion.poll()) != null) {
+            _get(done);
+        }
+    }
+
+    /**
+     * Helper method for cleaning up after a failed parallel pre-sort: stops
+     * tasks, waits for running ones to finish and deletes files written by
+     * those that succeeded.
+     */
+    protected static void _abandon(ExecutorService executor, List<Future<File>> results)
+    {
+        executor.shutdownNow();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) { }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Future<File> result : results) {
+            if (result.isDone() && !result.isCancelled()) {
+                try {
+                    result.get().delete();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    // failed task deleted its own file
+                }
+            }
+        }
+    }
+
+    protected static void _deleteAll(List<File> files)
+    {
+        for (File f : files) {
+            f.delete();
+        }
+    }
+
+    /**
+     * Helper method for getting result of a background task, re-throwing
+     * its failure as is if it was an {@link IOException} or
+     * {@link RuntimeException}.
+     */
+    protected static <V> V _get(Future<V> future) throws IOException
+    {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException ie = new InterruptedIOException();
+            ie.initCause(e);
+            throw ie;
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new IOException(t);
+        }
     }
 
     @SuppressWarnings("resource")
@@ -214,10 +436,14 @@ public abstract class SorterBase<T>
     {
         File tmp = _config.getTempFileProvider().provide();
         @SuppressWarnings("unchecked")
-        DataWriter<Object> writer = (DataWriter<Object>) _writerFactory.constructWriter(new FileOutputStream(tmp));
+        DataWriter<Object> writer = (DataWriter<Object>) _combining(_writerFactory.constructWriter(_openRunFile(tmp)));
         boolean closed = false;
+        boolean written = false;
         try {
-            ++_presortFileCount;
+            // may be called from pre-sort threads
+            synchronized (this) {
+                ++_presortFileCount;
+            }
             for (int i = 0, end = items.length; i < end; ++i) {
                 writer.writeEntry(items[i]);
                 // to further reduce transient mem usage, clear out the ref
@@ -225,15 +451,185 @@ public abstract class SorterBase<T>
             }
             closed = true;
             writer.close();
+            written = true;
         } finally {
             if (!closed) {
                 // better swallow since most likely we are getting an exception already...
                 try { writer.close(); } catch (IOException e) { }
             }
+            if (!written) {
+                tmp.delete();
+            }
         }
         return tmp;
     }
     
+    /*
+    /********************************************************************** 
+    /* Internal methods, packed pre-sorting
+    /********************************************************************** 
+     */
+
+    /**
+     * Whether entries of given input can be pre-sorted in their raw form,
+     * using {@link PackedBuffer}s.
+     */
+    protected boolean _canPresortPacked(DataReader<T> inputReader)
+    {
+        return (_config.getPresortMode() != SortConfig.PresortMode.OBJECTS)
+                && (_comparator instanceof RawComparator)
+                && (_combiner == null || _combiner.canCombineRaw())
+                && inputReader.canReadRaw();
+    }
+
+    /**
+     * Creates a pre-sort buffer; with multiple pre-sort threads, memory is
+     * divided between buffers the same way as for object buffers.
+     */
+    protected PackedBuffer _createPackedBuffer()
+    {
+        long memory = _config.getMaxMemoryUsage();
+        final int threads = _config.getPresortThreads();
+        if (threads > 1) {
+            memory /= (threads + 1);
+        }
+        return new PackedBuffer(memory,
+                _config.getPresortMode() == SortConfig.PresortMode.PACKED_DIRECT,
+                (RawComparator) _comparator, _isBytewise());
+    }
+
+    /**
+     * Packed counterpart of {@link #_presort}, called after the first
+     * buffer has been filled, sorted and written; pre-sorts the rest of the
+     * input, starting with the entry left in <code>carry</code>.
+     */
+    protected void _presortPacked(DataReader<T> inputReader, PackedBuffer buffer, ByteSlice carry,
+            List<File> presorted)
+        throws IOException
+    {
+        boolean success = false;
+        try {
+            if (_config.getPresortThreads() > 1) {
+                _presortPackedInParallel(inputReader, buffer, carry, presorted);
+            } else {
+                boolean more;
+                do {
+                    more = buffer.fill(inputReader, carry);
+                    buffer.sort();
+                    presorted.add(_writePresorted(buffer));
+                } while (more);
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                _deleteAll(presorted);
+            }
+        }
+    }
+
+    /**
+     * Variant of {@link #_presortPacked} used with more than one pre-sort
+     * thread, like {@link #_presortInParallel}: buffers are passed to the
+     * thread pool for sorting and writing, and returned for reuse after.
+     * Failures stop reading of input as in {@link #_presortInParallel}.
+     */
+    protected void _presortPackedInParallel(DataReader<T> inputReader, PackedBuffer first, ByteSlice carry,
+            List<File> presorted)
+        throws IOException
+    {
+        final int threads = _config.getPresortThreads();
+        final BlockingQueue<PackedBuffer> free = new ArrayBlockingQueue<PackedBuffer>(threads);
+        free.add(first);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<File> completion = new ExecutorCompletionService<File>(executor);
+        List<Future<File>> results = new ArrayList<Future<File>>();
+        int created = 1;
+        boolean success = false;
+        try {
+            boolean more;
+            do {
+                PackedBuffer next = free.poll();
+                if (next == null) {
+                    if (created < threads) {
+                        next = _createPackedBuffer();
+                        ++created;
+                    } else {
+                        next = _take(free);
+                    }
+                }
+                _checkCompleted(completion);
+                final PackedBuffer buffer = next;
+                more = buffer.fill(inputReader, carry);
+                results.add(completion.submit(new Callable<File>() {
+                    @Override
+                    public File call() throws IOException {
+                        try {
+                            buffer.sort();
+                            return _writePresorted(buffer);
+                        } finally {
+                            free.add(buffer);
+                        }
+                    }
+                }));
+            } while (more);
+            // results are added in input order, to keep merge order deterministic
+            List<File> files = new ArrayList<File>(results.size());
+            for (Future<File> result : results) {
+                files.add(_get(result));
+            }
+            presorted.addAll(files);
+            success = true;
+        } finally {
+            if (success) {
+                executor.shutdownNow();
+            } else {
+                _abandon(executor, results);
+            }
+        }
+    }
+
+    protected static <V> V _take(BlockingQueue<V> queue) throws IOException
+    {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException ie = new InterruptedIOException();
+            ie.initCause(e);
+            throw ie;
+        }
+    }
+
+    @SuppressWarnings("resource")
+    protected File _writePresorted(PackedBuffer buffer) throws IOException
+    {
+        File tmp = _config.getTempFileProvider().provide();
+        DataWriter<T> writer = _combining(_writerFactory.constructWriter(_openRunFile(tmp)));
+        boolean closed = false;
+        boolean written = false;
+        try {
+            if (!writer.canWriteRaw()) {
+                throw new IllegalStateException("Packed pre-sort requires DataWriter that supports raw entries; "
+                        +writer.getClass().getName()+" does not");
+            }
+            synchronized (this) {
+                ++_presortFileCount;
+            }
+            buffer.writeTo(writer);
+            closed = true;
+            writer.close();
+            written = true;
+        } finally {
+            if (!closed) {
+                try { writer.close(); } catch (IOException e) { }
+            }
+            if (!written) {
+                tmp.delete();
+            }
+        }
+        return tmp;
+    }
+
     /*
     /********************************************************************** 
     /* Internal methods, sorting, output
@@ -265,19 +661,123 @@ public abstract class SorterBase<T>
 
         // first intermediate rounds
         List<File> inputs = presorted;
-        while (inputs.size() > mergeFactor) {
-            ArrayList<File> outputs = new ArrayList<File>(1 + ((inputs.size() + mergeFactor - 1) / mergeFactor));
-            for (int offset = 0, end = inputs.size(); offset < end; offset += mergeFactor) {
-                int localEnd = Math.min(offset + mergeFactor, end);
-                outputs.add(_merge(inputs.subList(offset, localEnd)));
+        final int threads = _config.getMergeThreads();
+        ExecutorService executor = null;
+        try {
+            while (inputs.size() > mergeFactor) {
+                inputs = _interleaveByDevice(inputs);
+                List<File> outputs;
+                if (threads > 1) {
+                    if (executor == null) {
+                        executor = Executors.newFixedThreadPool(threads);
+                    }
+                    outputs = _mergeRoundInParallel(executor, inputs, mergeFactor);
+                } else {
+                    outputs = new ArrayList<File>(1 + ((inputs.size() + mergeFactor - 1) / mergeFactor));
+                    for (int offset = 0, end = inputs.size(); offset < end; offset += mergeFactor) {
+                        int localEnd = Math.min(offset + mergeFactor, end);
+                        outputs.add(_merge(inputs.subList(offset, localEnd)));
+                    }
+                }
+                ++_currentSortRound;
+                // and then switch result files to be input files
+                inputs = outputs;
+                // caller checks for cancellation; no point in further rounds
+                if (_cancelRequest.get()) {
+                    break;
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
             }
-            ++_currentSortRound;
-            // and then switch result files to be input files
-            inputs = outputs;
         }
         return inputs;
     }
 
+    /**
+     * Variant of a single intermediate merge round used with more than one
+     * merge thread: groups are merged concurrently, and results collected
+     * in input order so that the outcome does not depend on scheduling.
+     * Groups not yet started when sorting is cancelled are passed through
+     * as is, so returned files always contain all entries.
+     */
+    protected List<File> _mergeRoundInParallel(ExecutorService executor, List<File> inputs, int mergeFactor)
+        throws IOException
+    {
+        List<Future<List<File>>> results = new ArrayList<Future<List<File>>>();
+        for (int offset = 0, end = inputs.size(); offset < end; offset += mergeFactor) {
+            final List<File> group = inputs.subList(offset, Math.min(offset + mergeFactor, end));
+            results.add(executor.submit(new Callable<List<File>>() {
+                @Override
+                public List<File> call() throws IOException {
+                    if (_cancelRequest.get()) {
+                        return group;
+                    }
+                    return Collections.singletonList(_merge(group));
+                }
+            }));
+        }
+        ArrayList<File> outputs = new ArrayList<File>(results.size());
+        for (Future<List<File>> result : results) {
+            outputs.addAll(_get(result));
+        }
+        return outputs;
+    }
+
+    /**
+     * Reorders files of an intermediate merge round so that files on the
+     * same device (like ones spread by
+     * {@link com.fasterxml.sort.std.StripedTempFileProvider}) are spread
+     * evenly over merge groups: each group then reads from as many devices
+     * as possible, and groups merged in parallel do not queue on one.
+     * Files all on one device are returned as is.
+     */
+    protected List<File> _interleaveByDevice(List<File> inputs)
+    {
+        Map<File,Object> devices = new HashMap<File,Object>();
+        Map<Object,List<File>> byDevice = new LinkedHashMap<Object,List<File>>();
+        for (File input : inputs) {
+            File dir = input.getAbsoluteFile().getParentFile();
+            Object device = devices.get(dir);
+            if (device == null) {
+                device = _device(dir);
+                devices.put(dir, device);
+            }
+            List<File> files = byDevice.get(device);
+            if (files == null) {
+                files = new ArrayList<File>();
+                byDevice.put(device, files);
+            }
+            files.add(input);
+        }
+        if (byDevice.size() < 2) {
+            return inputs;
+        }
+        List<File> result = new ArrayList<File>(inputs.size());
+        for (int i = 0; result.size() < inputs.size(); ++i) {
+            for (List<File> files : byDevice.values()) {
+                if (i < files.size()) {
+                    result.add(files.get(i));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Key identifying device (file store) of given directory; the
+     *   directory itself if it can not be determined
+     */
+    protected static Object _device(File dir)
+    {
+        try {
+            return Files.getFileStore(dir.toPath());
+        } catch (IOException e) {
+            return dir;
+        }
+    }
+
     protected void _writeAll(DataWriter<T> resultWriter, Object[] items)
         throws IOException
     {
@@ -294,26 +794,38 @@ public abstract class SorterBase<T>
         throws IOException
     {
         File resultFile = _config.getTempFileProvider().provide();
-        _merge(inputs, _writerFactory.constructWriter(new FileOutputStream(resultFile)));
+        _merge(inputs, _writerFactory.constructWriter(_openRunFile(resultFile)));
         return resultFile;
     }
 
     protected void _merge(List<File> inputs, DataWriter<T> writer)
         throws IOException
     {
-        DataReader<T> merger = null;
+        writer = _combining(writer);
+        List<DataReader<T>> readers = null;
+        boolean done = false;
         try {
-            merger = _createMergeReader(inputs);
-            T value;
-            while ((value = merger.readNext()) != null) {
-                writer.writeEntry(value);
+            readers = _openRunReaders(inputs);
+            if (_canMergeRaw(readers, writer)) {
+                Merger.mergeRaw((RawComparator) _comparator, readers, writer);
+            } else {
+                DataReader<T> merger = _createMerger(readers);
+                T value;
+                while ((value = merger.readNext()) != null) {
+                    writer.writeEntry(value);
+                }
+            }
+            // usually not necessary (reader should close on eof) but...
+            for (DataReader<T> reader : readers) {
+                reader.close();
             }
-            merger.close(); // usually not necessary (reader should close on eof) but...
-            merger = null;
+            done = true;
             writer.close();
         } finally {
-            if (merger != null) {
-                try { merger.close(); } catch (IOException e) { }
+            if (!done && readers != null) {
+                for (DataReader<T> reader : readers) {
+                    try { reader.close(); } catch (IOException e) { }
+                }
             }
             for (File input : inputs) {
                 input.delete();
@@ -322,13 +834,123 @@ public abstract class SorterBase<T>
     }
 
     protected DataReader<T> _createMergeReader(List<File> inputs) throws IOException {
-        ArrayList<DataReader<T>> readers = new ArrayList<DataReader<T>>(inputs.size());
-        for (File mergedInput : inputs) {
-            readers.add(_readerFactory.constructReader(new FileInputStream(mergedInput)));
+        return _createMerger(_openRunReaders(inputs));
+    }
+
+    protected DataReader<T> _createMerger(List<DataReader<T>> readers) throws IOException {
+        if (_config.getMergerType() == SortConfig.MergerType.TOURNAMENT) {
+            return Merger.tournamentReader(_comparator, readers);
         }
         return Merger.mergedReader(_comparator, readers);
     }
+
+    protected List<DataReader<T>> _openRunReaders(List<File> inputs) throws IOException
+    {
+        ArrayList<DataReader<T>> readers = new ArrayList<DataReader<T>>(inputs.size());
+        try {
+            for (File mergedInput : inputs) {
+                readers.add(new RunFileReader<T>(_openRunReader(mergedInput), mergedInput));
+            }
+        } catch (IOException e) {
+            for (DataReader<T> reader : readers) {
+                try { reader.close(); } catch (IOException e2) { }
+            }
+            throw e;
+        }
+        return readers;
+    }
+
+    /**
+     * Whether entries can be merged from given readers to given writer in
+     * their raw form, i.e. without constructing items: requires comparator
+     * to be a {@link RawComparator}, and readers and writer to support raw
+     * access.
+     */
+    protected boolean _canMergeRaw(List<DataReader<T>> readers, DataWriter<T> writer)
+    {
+        if (!(_comparator instanceof RawComparator) || !writer.canWriteRaw()) {
+            return false;
+        }
+        for (DataReader<T> reader : readers) {
+            if (!reader.canReadRaw()) {
+                return false;
+            }
+        }
+        return true;
+    }
     
+    /**
+     * Wraps given writer to apply configured {@link Combiner}, if any.
+     */
+    protected DataWriter<T> _combining(DataWriter<T> writer)
+    {
+        if (_combiner == null) {
+            return writer;
+        }
+        return new CombiningWriter<T>(writer, _combiner);
+    }
+
+    /**
+     * Opens given temporary file for writing, encoding contents with
+     * configured {@link RunFileCodec} if any.
+     */
+    protected OutputStream _openRunFile(File file) throws IOException
+    {
+        OutputStream out = new FileOutputStream(file);
+        RunFileCodec codec = _config.getRunFileCodec();
+        if (codec != null) {
+            try {
+                out = codec.encode(out);
+            } catch (IOException e) {
+                out.close();
+                throw e;
+            }
+        }
+        // encoding is done in background as well
+        int bufferSize = _config.getAsyncWriteBufferSize();
+        if (bufferSize > 0) {
+            out = new AsyncOutputStream(out, bufferSize);
+        }
+        return out;
+    }
+
+    /**
+     * Constructs reader for given temporary file; file is passed to reader
+     * factory as is, unless it needs decoding with configured
+     * {@link RunFileCodec} or is to be read ahead.
+     */
+    protected DataReader<T> _openRunReader(File file) throws IOException
+    {
+        if (_config.getRunFileCodec() == null && _config.getAsyncReadBufferSize() == 0) {
+            return _readerFactory.constructReader(file);
+        }
+        return _readerFactory.constructReader(_readRunFile(file));
+    }
+
+    /**
+     * Opens given temporary file for reading, decoding contents with
+     * configured {@link RunFileCodec} if any.
+     */
+    protected InputStream _readRunFile(File file) throws IOException
+    {
+        InputStream in = new FileInputStream(file);
+        RunFileCodec codec = _config.getRunFileCodec();
+        if (codec != null) {
+            try {
+                in = codec.decode(in);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+        // as is decoding
+        int bufferSize = _config.getAsyncReadBufferSize();
+        if (bufferSize > 0) {
+            in = new PrefetchInputStream(in, bufferSize);
+        }
+        return in;
+    }
+
     /*
     /********************************************************************** 
     /* Internal methods, other
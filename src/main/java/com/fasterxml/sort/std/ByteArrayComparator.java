@@ -2,26 +2,35 @@ package com.fasterxml.sort.std;
 
 import java.util.Comparator;
 
+import com.fasterxml.sort.RawComparator;
+
 /**
  * Simple implementation of comparator for byte arrays which
  * will compare using <code>unsigned</code> byte values (meaning
  * that 0xFF is creator than 0x00, for example).
+ * Since entries are their own raw form, also implements {@link RawComparator}.
  */
 public class ByteArrayComparator
-    implements Comparator<byte[]>
+    implements Comparator<byte[]>, RawComparator
 {
     @Override
     public int compare(byte[] o1, byte[] o2)
     {
-        final int len = Math.min(o1.length, o2.length);
+        return compareRaw(o1, 0, o1.length, o2, 0, o2.length);
+    }
+
+    @Override
+    public int compareRaw(byte[] b1, int offset1, int length1,
+            byte[] b2, int offset2, int length2)
+    {
+        final int len = Math.min(length1, length2);
         for (int i = 0; i < len; ++i) {
             // alas, sign extension means we must do masking...
-            int diff = (o1[i] & 0xFF) - (o2[i] & 0xFF);
+            int diff = (b1[offset1 + i] & 0xFF) - (b2[offset2 + i] & 0xFF);
             if (diff != 0) {
                 return diff;
             }
         }
-        return o1.length - o2.length;
+        return length1 - length2;
     }
-
 }
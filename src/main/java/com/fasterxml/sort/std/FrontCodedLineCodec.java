@@ -0,0 +1,268 @@
+package com.fasterxml.sort.std;
+
+import java.io.*;
+import java.util.Arrays;
+
+import com.fasterxml.sort.RunFileCodec;
+
+/**
+ * {@link RunFileCodec} for text lines (separated by LF) that stores each
+ * line as the length of the prefix it shares with the previous line plus
+ * the remaining bytes. Sorted runs of keys with long common prefixes
+ * (like n-grams) shrink considerably; any other line data is still
+ * encoded losslessly, just not usefully.
+ *<p>
+ * Each line is written as two variable-length ints, shared prefix length
+ * and <code>suffixLength * 2 + terminated</code>, followed by the suffix
+ * bytes; "terminated" is 0 only for last line of input not followed by a
+ * linefeed. Can be combined with a block codec using {@link #FrontCodedLineCodec(RunFileCodec)}.
+ */
+public class FrontCodedLineCodec
+    extends RunFileCodec
+{
+    protected final static byte BYTE_LF = (byte) '\n';
+
+    /**
+     * Optional codec applied to front-coded data
+     */
+    protected final RunFileCodec _next;
+
+    public FrontCodedLineCodec() { this(null); }
+
+    public FrontCodedLineCodec(RunFileCodec next) {
+        _next = next;
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out) throws IOException
+    {
+        if (_next != null) {
+            out = _next.encode(out);
+        }
+        return new Encoder(out);
+    }
+
+    @Override
+    public InputStream decode(InputStream in) throws IOException
+    {
+        if (_next != null) {
+            in = _next.decode(in);
+        }
+        return new Decoder(in);
+    }
+
+    /*
+    /**********************************************************************
+    /* Streams
+    /**********************************************************************
+     */
+
+    protected static class Encoder extends OutputStream
+    {
+        protected final OutputStream _out;
+        protected byte[] _previous = new byte[256];
+        protected int _previousLength;
+        protected byte[] _line = new byte[256];
+        protected int _lineLength;
+        protected boolean _closed;
+
+        public Encoder(OutputStream out)
+        {
+            if (!(out instanceof BufferedOutputStream)) {
+                out = new BufferedOutputStream(out);
+            }
+            _out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            if (b == BYTE_LF) {
+                _writeLine(true);
+            } else {
+                _append((byte) b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            for (int end = off + len; off < end; ++off) {
+                byte c = b[off];
+                if (c == BYTE_LF) {
+                    _writeLine(true);
+                } else {
+                    _append(c);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // partial line is kept until its linefeed (or close)
+            _out.flush();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (!_closed) {
+                _closed = true;
+                try {
+                    if (_lineLength > 0) {
+                        _writeLine(false);
+                    }
+                } finally {
+                    _out.close();
+                }
+            }
+        }
+
+        private void _append(byte b)
+        {
+            if (_lineLength == _line.length) {
+                _line = Arrays.copyOf(_line, _line.length * 2);
+            }
+            _line[_lineLength++] = b;
+        }
+
+        private void _writeLine(boolean terminated) throws IOException
+        {
+            final byte[] line = _line;
+            final byte[] prev = _previous;
+            int max = Math.min(_lineLength, _previousLength);
+            int shared = 0;
+            while (shared < max && line[shared] == prev[shared]) {
+                ++shared;
+            }
+            int suffix = _lineLength - shared;
+            _writeVInt(shared);
+            _writeVInt((suffix << 1) | (terminated ? 1 : 0));
+            _out.write(line, shared, suffix);
+            // and current line becomes the previous one
+            _line = prev;
+            _previous = line;
+            _previousLength = _lineLength;
+            _lineLength = 0;
+        }
+
+        private void _writeVInt(int value) throws IOException
+        {
+            while ((value & ~0x7F) != 0) {
+                _out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            _out.write(value);
+        }
+    }
+
+    protected static class Decoder extends InputStream
+    {
+        protected final InputStream _in;
+        /**
+         * Current line, including linefeed if it had one
+         */
+        protected byte[] _line = new byte[256];
+        protected int _ptr;
+        protected int _end;
+        /**
+         * Length of current line without linefeed, i.e. the part later
+         * lines may share
+         */
+        protected int _lineLength;
+
+        public Decoder(InputStream in)
+        {
+            if (!(in instanceof BufferedInputStream)) {
+                in = new BufferedInputStream(in);
+            }
+            _in = in;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            if (_ptr == _end && !_readLine()) {
+                return -1;
+            }
+            return _line[_ptr++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (len == 0) {
+                return 0;
+            }
+            if (_ptr == _end && !_readLine()) {
+                return -1;
+            }
+            int count = Math.min(len, _end - _ptr);
+            System.arraycopy(_line, _ptr, b, off, count);
+            _ptr += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+
+        protected boolean _readLine() throws IOException
+        {
+            int shared = _readVInt(true);
+            if (shared < 0) {
+                return false;
+            }
+            int header = _readVInt(false);
+            int suffix = header >>> 1;
+            if (shared > _lineLength) {
+                throw new IOException("Corrupt front-coded data: shared prefix of "+shared
+                        +" bytes, previous line only has "+_lineLength);
+            }
+            int length = shared + suffix;
+            if (_line.length < length + 1) {
+                _line = Arrays.copyOf(_line, Math.max(length + 1, _line.length * 2));
+            }
+            int offset = shared;
+            while (offset < length) {
+                int count = _in.read(_line, offset, length - offset);
+                if (count < 0) {
+                    throw new EOFException("Unexpected end of front-coded data");
+                }
+                offset += count;
+            }
+            _lineLength = length;
+            _end = length;
+            if ((header & 1) != 0) {
+                _line[_end++] = BYTE_LF;
+            }
+            _ptr = 0;
+            return true;
+        }
+
+        /**
+         * @param eofOk Whether end of input is acceptable (returns -1)
+         */
+        private int _readVInt(boolean eofOk) throws IOException
+        {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = _in.read();
+                if (b < 0) {
+                    if (eofOk && shift == 0) {
+                        return -1;
+                    }
+                    throw new EOFException("Unexpected end of front-coded data");
+                }
+                if (shift > 28) {
+                    throw new IOException("Corrupt front-coded data: malformed length");
+                }
+                value |= (b & 0x7F) << shift;
+                if (b < 0x80) {
+                    return value;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.fasterxml.sort.std;
+
+import java.io.*;
+import java.util.Arrays;
+
+import com.fasterxml.sort.RunFileCodec;
+
+/**
+ * {@link RunFileCodec} that compresses data in independent blocks, using
+ * a simple LZ77 variant (in the spirit of LZ4) that favors speed over
+ * compression ratio: matches are found with a single hash probe and
+ * encoded without entropy coding.
+ *<p>
+ * Each block is written as a type byte, raw length and stored length
+ * (both as 4-byte ints), followed by stored bytes; blocks that do not
+ * compress are stored as is. Compressed data is a sequence of tokens,
+ * each having a literal run followed by a back-reference; high nibble of
+ * the token byte is literal length, low nibble match length minus 4, with
+ * value 15 meaning that length continues in following bytes (each adding
+ * up to 255). Last token of a block only has literals.
+ */
+public class LZBlockCodec
+    extends RunFileCodec
+{
+    public final static int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    protected final static int BLOCK_RAW = 0;
+    protected final static int BLOCK_COMPRESSED = 1;
+
+    protected final static int MIN_MATCH = 4;
+    protected final static int MAX_OFFSET = 0xFFFF;
+    protected final static int HASH_BITS = 14;
+
+    protected final int _blockSize;
+
+    public LZBlockCodec() { this(DEFAULT_BLOCK_SIZE); }
+
+    public LZBlockCodec(int blockSize)
+    {
+        if (blockSize < 16) {
+            throw new IllegalArgumentException("Block size must be at least 16 bytes, got "+blockSize);
+        }
+        _blockSize = blockSize;
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out) {
+        return new Encoder(out, _blockSize);
+    }
+
+    @Override
+    public InputStream decode(InputStream in) {
+        return new Decoder(in);
+    }
+
+    /*
+    /**********************************************************************
+    /* Block compression
+    /**********************************************************************
+     */
+
+    /**
+     * @return Maximum length of compressed data for input of given length
+     */
+    protected static int maxCompressedLength(int length) {
+        return length + (length / 255) + 16;
+    }
+
+    /**
+     * Compresses <code>src[0, length)</code> into <code>dst</code>, which
+     * must have room for {@link #maxCompressedLength} bytes.
+     *
+     * @return Length of compressed data
+     */
+    protected static int compress(byte[] src, int length, byte[] dst, int[] table)
+    {
+        Arrays.fill(table, -1);
+        int out = 0;
+        int anchor = 0;
+        int i = 0;
+        final int limit = length - MIN_MATCH;
+        while (i <= limit) {
+            int seq = _int(src, i);
+            int h = (seq * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[h];
+            table[h] = i;
+            if (ref < 0 || i - ref > MAX_OFFSET || _int(src, ref) != seq) {
+                ++i;
+                continue;
+            }
+            int match = MIN_MATCH;
+            while (i + match < length && src[ref + match] == src[i + match]) {
+                ++match;
+            }
+            out = _token(src, anchor, i - anchor, dst, out, match - MIN_MATCH);
+            dst[out++] = (byte) (i - ref);
+            dst[out++] = (byte) ((i - ref) >> 8);
+            out = _length(dst, out, match - MIN_MATCH);
+            i += match;
+            anchor = i;
+        }
+        // and then the trailing literals
+        return _token(src, anchor, length - anchor, dst, out, 0);
+    }
+
+    /**
+     * Decompresses <code>src[0, length)</code> into <code>dst</code>.
+     *
+     * @return Length of decompressed data
+     */
+    protected static int decompress(byte[] src, int length, byte[] dst) throws IOException
+    {
+        int in = 0;
+        int out = 0;
+        try {
+            while (true) {
+                int token = src[in++] & 0xFF;
+                int literals = token >> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = src[in++] & 0xFF;
+                        literals += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, in, dst, out, literals);
+                in += literals;
+                out += literals;
+                if (in >= length) {
+                    if (in > length) {
+                        throw new IOException("Corrupt compressed block: literals past end of block");
+                    }
+                    return out;
+                }
+                int offset = (src[in] & 0xFF) | ((src[in + 1] & 0xFF) << 8);
+                in += 2;
+                int match = token & 0xF;
+                if (match == 15) {
+                    int b;
+                    do {
+                        b = src[in++] & 0xFF;
+                        match += b;
+                    } while (b == 255);
+                }
+                match += MIN_MATCH;
+                int ref = out - offset;
+                if (offset == 0 || ref < 0) {
+                    throw new IOException("Corrupt compressed block: invalid offset "+offset);
+                }
+                if (out + match > dst.length) {
+                    throw new IOException("Corrupt compressed block: match past end of block");
+                }
+                // may overlap, so can not use arraycopy
+                for (int end = out + match; out < end; ) {
+                    dst[out++] = dst[ref++];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupt compressed block", e);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt compressed block", e);
+        }
+    }
+
+    private static int _token(byte[] src, int start, int literals, byte[] dst, int out, int match)
+    {
+        dst[out++] = (byte) ((Math.min(literals, 15) << 4) | Math.min(match, 15));
+        out = _length(dst, out, literals);
+        System.arraycopy(src, start, dst, out, literals);
+        return out + literals;
+    }
+
+    /**
+     * Writes remainder of a length for which token nibble was 15, if any
+     */
+    private static int _length(byte[] dst, int out, int length)
+    {
+        if (length >= 15) {
+            length -= 15;
+            while (length >= 255) {
+                dst[out++] = (byte) 255;
+                length -= 255;
+            }
+            dst[out++] = (byte) length;
+        }
+        return out;
+    }
+
+    private static int _int(byte[] b, int i) {
+        return (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | ((b[i + 2] & 0xFF) << 16) | (b[i + 3] << 24);
+    }
+
+    /*
+    /**********************************************************************
+    /* Streams
+    /**********************************************************************
+     */
+
+    protected static class Encoder extends OutputStream
+    {
+        protected final DataOutputStream _out;
+        protected final byte[] _block;
+        protected final byte[] _compressed;
+        protected final int[] _table = new int[1 << HASH_BITS];
+        protected int _length;
+        protected boolean _closed;
+
+        public Encoder(OutputStream out, int blockSize)
+        {
+            _out = new DataOutputStream(out);
+            _block = new byte[blockSize];
+            _compressed = new byte[maxCompressedLength(blockSize)];
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            if (_length == _block.length) {
+                _writeBlock();
+            }
+            _block[_length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            while (len > 0) {
+                if (_length == _block.length) {
+                    _writeBlock();
+                }
+                int count = Math.min(len, _block.length - _length);
+                System.arraycopy(b, off, _block, _length, count);
+                _length += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            _writeBlock();
+            _out.flush();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (!_closed) {
+                _closed = true;
+                try {
+                    _writeBlock();
+                } finally {
+                    _out.close();
+                }
+            }
+        }
+
+        protected void _writeBlock() throws IOException
+        {
+            if (_length == 0) {
+                return;
+            }
+            int stored = compress(_block, _length, _compressed, _table);
+            if (stored < _length) {
+                _out.writeByte(BLOCK_COMPRESSED);
+                _out.writeInt(_length);
+                _out.writeInt(stored);
+                _out.write(_compressed, 0, stored);
+            } else {
+                _out.writeByte(BLOCK_RAW);
+                _out.writeInt(_length);
+                _out.writeInt(_length);
+                _out.write(_block, 0, _length);
+            }
+            _length = 0;
+        }
+    }
+
+    protected static class Decoder extends InputStream
+    {
+        protected final DataInputStream _in;
+        protected byte[] _block = new byte[0];
+        protected byte[] _compressed = new byte[0];
+        protected int _ptr;
+        protected int _end;
+        protected boolean _eof;
+
+        public Decoder(InputStream in)
+        {
+            if (!(in instanceof BufferedInputStream)) {
+                in = new BufferedInputStream(in);
+            }
+            _in = new DataInputStream(in);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            if (_ptr == _end && !_readBlock()) {
+                return -1;
+            }
+            return _block[_ptr++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (len == 0) {
+                return 0;
+            }
+            if (_ptr == _end && !_readBlock()) {
+                return -1;
+            }
+            int count = Math.min(len, _end - _ptr);
+            System.arraycopy(_block, _ptr, b, off, count);
+            _ptr += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return _end - _ptr;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+
+        protected boolean _readBlock() throws IOException
+        {
+            if (_eof) {
+                return false;
+            }
+            int type = _in.read();
+            if (type < 0) {
+                _eof = true;
+                return false;
+            }
+            int length = _in.readInt();
+            int stored = _in.readInt();
+            if (length < 0 || stored < 0 || stored > maxCompressedLength(length)) {
+                throw new IOException("Corrupt block header: length "+length+", stored "+stored);
+            }
+            if (_block.length < length) {
+                _block = new byte[length];
+            }
+            if (type == BLOCK_RAW) {
+                _in.readFully(_block, 0, length);
+            } else if (type == BLOCK_COMPRESSED) {
+                if (_compressed.length < stored) {
+                    _compressed = new byte[stored];
+                }
+                _in.readFully(_compressed, 0, stored);
+                if (decompress(_compressed, stored, _block) != length) {
+                    throw new IOException("Corrupt compressed block: length does not match header");
+                }
+            } else {
+                throw new IOException("Unknown block type "+type);
+            }
+            _ptr = 0;
+            _end = length;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.fasterxml.sort.std;
+
+import com.fasterxml.sort.Combiner;
+import com.fasterxml.sort.util.ByteSlice;
+
+/**
+ * {@link Combiner} for text lines that collapses duplicate lines into one
+ * with a count: a line is either a key on its own (counting as 1), or a
+ * key followed by a separator (tab by default) and a decimal count.
+ * Adjacent lines with equal keys are combined into
+ * <code>key SEPARATOR sum</code>.
+ *<p>
+ * For this to keep lines sorted in byte order, separator must sort before
+ * any byte keys contain; then all lines of a key are adjacent whatever
+ * their counts are. This is true for tab and keys without control
+ * characters.
+ *<p>
+ * Instances keep no state between calls, so one can be shared by writers
+ * running on several threads.
+ */
+public class LineCountCombiner
+    extends Combiner<byte[]>
+{
+    public final static byte DEFAULT_SEPARATOR = (byte) '\t';
+
+    protected final byte _separator;
+
+    public LineCountCombiner() {
+        this(DEFAULT_SEPARATOR);
+    }
+
+    public LineCountCombiner(byte separator) {
+        _separator = separator;
+    }
+
+    @Override
+    public byte[] combine(byte[] first, byte[] second)
+    {
+        ByteSlice result = new ByteSlice();
+        if (!_combine(first, 0, first.length, second, 0, second.length, result)) {
+            return null;
+        }
+        // buffer was allocated for exactly this line
+        return result.getBuffer();
+    }
+
+    @Override
+    public boolean canCombineRaw() {
+        return true;
+    }
+
+    @Override
+    public boolean combineRaw(ByteSlice first, ByteSlice second, ByteSlice result)
+    {
+        return _combine(first.getBuffer(), first.getOffset(), first.getLength(),
+                second.getBuffer(), second.getOffset(), second.getLength(), result);
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    /**
+     * Builds combined line in buffer of <code>result</code>, if keys are
+     * equal; buffer is replaced if missing or too small.
+     */
+    protected boolean _combine(byte[] b1, int off1, int len1, byte[] b2, int off2, int len2,
+            ByteSlice result)
+    {
+        int key1 = _keyLength(b1, off1, len1);
+        int key2 = _keyLength(b2, off2, len2);
+        if (key1 != key2) {
+            return false;
+        }
+        for (int i = 0; i < key1; ++i) {
+            if (b1[off1 + i] != b2[off2 + i]) {
+                return false;
+            }
+        }
+        long count = _count(b1, off1 + key1, off1 + len1) + _count(b2, off2 + key2, off2 + len2);
+        int end = key1 + 1 + _digits(count);
+        byte[] buffer = result.getBuffer();
+        if (buffer == null) {
+            buffer = new byte[end];
+        } else if (buffer.length < end) {
+            buffer = new byte[Math.max(end, buffer.length << 1)];
+        }
+        System.arraycopy(b1, off1, buffer, 0, key1);
+        int ptr = key1;
+        buffer[ptr++] = _separator;
+        for (int i = end; i > ptr; count /= 10) {
+            buffer[--i] = (byte) ('0' + (count % 10));
+        }
+        result.set(buffer, 0, end);
+        return true;
+    }
+
+    protected int _keyLength(byte[] b, int offset, int length)
+    {
+        for (int i = length; --i >= 0; ) {
+            byte c = b[offset + i];
+            if (c == _separator) {
+                return i;
+            }
+            if (c < '0' || c > '9') {
+                break;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @return Count given by digits <code>b[start, end)</code>, which
+     *   start with the separator; 1 if empty
+     */
+    protected static long _count(byte[] b, int start, int end)
+    {
+        if (start == end) {
+            return 1L;
+        }
+        long count = 0L;
+        for (int i = start + 1; i < end; ++i) {
+            count = count * 10 + (b[i] - '0');
+        }
+        return count;
+    }
+
+    protected static int _digits(long value)
+    {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            ++digits;
+        }
+        return digits;
+    }
+}
@@ -0,0 +1,279 @@
+package com.fasterxml.sort.std;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.fasterxml.sort.*;
+import com.fasterxml.sort.util.ByteSlice;
+
+/**
+ * Reader for text lines of a file, like {@link RawTextLineReader}, but
+ * reading from a memory-mapped window of the file instead of copying
+ * through a stream buffer. Besides {@link #readNext}, which still returns
+ * a copy of each line, lines can be accessed without copying using
+ * {@link #readSlice}.
+ *<p>
+ * Files larger than the window size are mapped one window at a time;
+ * window is moved forward (and grown if a single line does not fit) as
+ * lines are read. Note that JDK only releases mappings when they are
+ * garbage collected, so on some platforms files can not be deleted right
+ * after closing the reader.
+ */
+public class MappedLineReader
+    extends DataReader<byte[]>
+{
+    public final static int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    protected final static byte BYTE_CR = (byte) '\r';
+    protected final static byte BYTE_LF = (byte) '\n';
+
+    private final static long ONES = 0x0101010101010101L;
+    private final static long HIGH_BITS = 0x8080808080808080L;
+
+    protected final FileChannel _channel;
+
+    protected final long _length;
+
+    protected int _windowSize;
+
+    protected boolean _closed = false;
+
+    /**
+     * Currently mapped window, covering file offsets
+     * <code>[_windowStart, _windowStart + _window.capacity())</code>
+     */
+    protected MappedByteBuffer _window;
+
+    protected long _windowStart;
+
+    /**
+     * View of current window returned by {@link #readSlice}
+     */
+    protected ByteBuffer _slice;
+
+    /**
+     * Buffer lines are copied to by {@link #readRaw}; grown as needed
+     */
+    protected byte[] _lineBuffer;
+
+    /**
+     * Position of the next line within the window
+     */
+    protected int _ptr;
+
+    /**
+     * Marker we set if the last line ended with a CR, since it
+     * may be followed by a trailing LF as part of two-byte linefeed.
+     */
+    protected boolean _hadCR = false;
+
+    public MappedLineReader(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    @SuppressWarnings("resource")
+    public MappedLineReader(File file, int windowSize) throws IOException
+    {
+        _channel = new RandomAccessFile(file, "r").getChannel();
+        _length = _channel.size();
+        _windowSize = windowSize;
+        _map(0L);
+    }
+
+    /**
+     * Convenience method for instantiating factory to create instances of
+     * this {@link DataReader}.
+     */
+    public static Factory factory() {
+        return new Factory();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (!_closed) {
+            _closed = true;
+            _window = null;
+            _slice = null;
+            _channel.close();
+        }
+    }
+
+    @Override
+    public int estimateSizeInBytes(byte[] item)
+    {
+        int bytes = item.length;
+        bytes = ((bytes + 3) >> 2) << 2;
+        return 16 + bytes;
+    }
+
+    @Override
+    public byte[] readNext() throws IOException
+    {
+        ByteBuffer slice = readSlice();
+        if (slice == null) {
+            return null;
+        }
+        byte[] result = new byte[slice.remaining()];
+        slice.get(result);
+        return result;
+    }
+
+    @Override
+    public boolean canReadRaw() {
+        return true;
+    }
+
+    /**
+     * Reads the next line, without linefeed, into a line buffer that is
+     * reused for all lines; so unlike {@link #readNext} this does not
+     * allocate anything once the buffer has grown to the longest line.
+     */
+    @Override
+    public boolean readRaw(ByteSlice slice) throws IOException
+    {
+        ByteBuffer line = readSlice();
+        if (line == null) {
+            return false;
+        }
+        int length = line.remaining();
+        byte[] buffer = _lineBuffer;
+        if (buffer == null || buffer.length < length) {
+            _lineBuffer = buffer = new byte[Math.max(length, 256)];
+        }
+        line.get(buffer, 0, length);
+        slice.set(buffer, 0, length);
+        return true;
+    }
+
+    /**
+     * Method for reading the next line without copying it: returned buffer
+     * has the line (without linefeed) between its position and limit. The
+     * buffer is reused, and only valid until next call to this reader.
+     *
+     * @return View of the next line; null at end of input
+     */
+    public ByteBuffer readSlice() throws IOException
+    {
+        if (_closed) {
+            return null;
+        }
+        if (_hadCR) {
+            _hadCR = false;
+            if (_available(0) && _window.get(_ptr) == BYTE_LF) {
+                ++_ptr;
+            }
+        }
+        if (!_available(0)) {
+            close();
+            return null;
+        }
+        int start = _ptr;
+        int i = start;
+        while (true) {
+            int end = _window.limit();
+            // skip 8 bytes at a time while there's no linefeed in them
+            final MappedByteBuffer window = _window;
+            while (i + 8 <= end && !_hasLinefeed(window.getLong(i))) {
+                i += 8;
+            }
+            while (i < end) {
+                byte b = window.get(i++);
+                if (b == BYTE_CR || b == BYTE_LF) {
+                    _hadCR = (b == BYTE_CR);
+                    _ptr = i;
+                    return _slice(start, i - 1);
+                }
+            }
+            // end of window: either end of file, or need to remap from line start
+            if (_windowStart + end >= _length) {
+                _ptr = end;
+                return _slice(start, end);
+            }
+            int scanned = i - start;
+            if (start == 0) {
+                // whole window is one line; need a bigger one
+                _windowSize = (int) Math.min(Integer.MAX_VALUE, 2L * _windowSize);
+            }
+            _map(_windowStart + start);
+            start = 0;
+            i = scanned;
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    /**
+     * @return Whether there is data at <code>_ptr + offset</code>, moving
+     *   the window forward if needed
+     */
+    protected boolean _available(int offset) throws IOException
+    {
+        if (_ptr + offset < _window.limit()) {
+            return true;
+        }
+        long pos = _windowStart + _ptr;
+        if (pos + offset >= _length) {
+            return false;
+        }
+        _map(pos);
+        return true;
+    }
+
+    /**
+     * @return Whether any of the 8 bytes is a CR or LF
+     */
+    protected static boolean _hasLinefeed(long word)
+    {
+        long cr = word ^ (ONES * BYTE_CR);
+        long lf = word ^ (ONES * BYTE_LF);
+        return ((((cr - ONES) & ~cr) | ((lf - ONES) & ~lf)) & HIGH_BITS) != 0L;
+    }
+
+    protected void _map(long start) throws IOException
+    {
+        long size = Math.min(_windowSize, _length - start);
+        _window = _channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        _slice = _window.duplicate();
+        _windowStart = start;
+        _ptr = 0;
+    }
+
+    protected ByteBuffer _slice(int start, int end)
+    {
+        ByteBuffer slice = _slice;
+        slice.limit(end);
+        slice.position(start);
+        return slice;
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Factory that maps files given to {@link #constructReader(File)};
+     * streams are read with a {@link RawTextLineReader}.
+     */
+    public static class Factory
+        extends DataReaderFactory<byte[]>
+    {
+        @Override
+        public DataReader<byte[]> constructReader(InputStream in) {
+            return new RawTextLineReader(in);
+        }
+
+        @Override
+        public DataReader<byte[]> constructReader(File file) throws IOException {
+            return new MappedLineReader(file);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.io.*;
 import java.util.Arrays;
 
 import com.fasterxml.sort.*;
+import com.fasterxml.sort.util.ByteSlice;
 
 /**
  * Efficient reader for data that consists of text lines, i.e. character
@@ -30,7 +31,16 @@ public class RawTextLineReader
      */
     protected boolean _hadCR = false;
 
-    protected ByteArrayOutputStream _tmpBytes;
+    /**
+     * Buffer for lines that do not fit in input buffer; allocated as needed
+     * and reused.
+     */
+    protected byte[] _lineBuffer;
+
+    /**
+     * Slice used by {@link #readNext} for locating the line to copy
+     */
+    protected final ByteSlice _slice = new ByteSlice();
     
     public RawTextLineReader(InputStream in)
     {
@@ -68,66 +78,89 @@ public class RawTextLineReader
     @Override
     public byte[] readNext() throws IOException
     {
-        if (_closed) {
+        final ByteSlice slice = _slice;
+        if (!readRaw(slice)) {
             return null;
         }
+        final int offset = slice.getOffset();
+        return Arrays.copyOfRange(slice.getBuffer(), offset, offset + slice.getLength());
+    }
+
+    @Override
+    public boolean canReadRaw() {
+        return true;
+    }
+
+    /**
+     * Reads the next line, without linefeed, as raw bytes; these are
+     * either in the input buffer, or (for lines split across reads)
+     * copied into a separate line buffer that is reused.
+     */
+    @Override
+    public boolean readRaw(ByteSlice slice) throws IOException
+    {
+        if (_closed) {
+            return false;
+        }
         if (_inputPtr >= _inputEnd) {
             if (!_loadMore()) {
                 close();
-                return null;
+                return false;
             }
         }
 
         // first thing(s) first: skip a linefeed we might have
         if (_hadCR) {
             if (!_skipLF()) {
-                return null;
+                return false;
             }
         }
 
-        // set the start point after our call to _skipLF() so that if a linefeed is skipped, we also skip it in Arrays.copyOfRange below
+        // set the start point after our call to _skipLF() so that if a linefeed is skipped, we also skip it below
         final int start = _inputPtr;
 
         // then common case: we find full row:
         final int end = _inputEnd;
-        while (_inputPtr < end) {
-            byte b = _inputBuffer[_inputPtr++];
+        final byte[] buffer = _inputBuffer;
+        int ptr = start;
+        while (ptr < end) {
+            byte b = buffer[ptr++];
             if (b == BYTE_CR || b == BYTE_LF) {
                 _hadCR = (b == BYTE_CR);
-                return Arrays.copyOfRange(_inputBuffer, start, _inputPtr-1);
+                _inputPtr = ptr;
+                slice.set(buffer, start, ptr-1-start);
+                return true;
             }
         }
+        _inputPtr = ptr;
         // but if not, need to buffer
-        return _readNextSlow(start);
+        _readRawSlow(slice, start);
+        return true;
     }
 
-    protected final byte[] _readNextSlow(int start) throws IOException
+    protected final void _readRawSlow(ByteSlice slice, int start) throws IOException
     {
-        ByteArrayOutputStream bytes = _tmpBytes;
-        if (bytes == null) {
-            _tmpBytes = bytes = new ByteArrayOutputStream();
-        } else {
-            bytes.reset();
-        }
         // add stuff we have seen so far, and...
-        bytes.write(_inputBuffer, start, _inputEnd - start);
+        int length = _appendLine(0, _inputBuffer, start, _inputEnd - start);
 
-        main_loop:        
+        main_loop:
         while (true) {
             if (!_loadMore()) {
                 close();
                 break;
             }
-            for (int i = 0, end = _inputEnd; i < end; ++i) {
+            for (int end = _inputEnd; _inputPtr < end; ) {
                 byte b = _inputBuffer[_inputPtr++];
                 if (b == BYTE_CR || b == BYTE_LF) {
                     _hadCR = (b == BYTE_CR);
-                    bytes.write(_inputBuffer, 0, _inputPtr-1);
+                    length = _appendLine(length, _inputBuffer, 0, _inputPtr-1);
                     break main_loop;
                 }
             }
+            // no linefeed in whole buffer, keep all of it
+            length = _appendLine(length, _inputBuffer, 0, _inputEnd);
         }
-        return bytes.toByteArray();
+        slice.set(_lineBuffer, 0, length);
     }
 
     /*
@@ -136,6 +169,21 @@ public class RawTextLineReader
     /**********************************************************************
      */
     
+    /**
+     * @return Length of line buffer contents after appending
+     */
+    protected int _appendLine(int length, byte[] src, int offset, int count)
+    {
+        byte[] line = _lineBuffer;
+        if (line == null) {
+            _lineBuffer = line = new byte[Math.max(count, _inputBuffer.length) + length];
+        } else if (length + count > line.length) {
+            _lineBuffer = line = Arrays.copyOf(line, Math.max(length + count, line.length << 1));
+        }
+        System.arraycopy(src, offset, line, length, count);
+        return length + count;
+    }
+
     protected boolean _loadMore() throws IOException
     {
         int count = _in.read(_inputBuffer);
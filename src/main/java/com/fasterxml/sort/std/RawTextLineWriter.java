@@ -68,6 +68,26 @@ public class RawTextLineWriter
         }
     }
 
+    @Override
+    public boolean canWriteRaw() {
+        return true;
+    }
+
+    /**
+     * Writes given bytes as a line, followed by the linefeed.
+     */
+    @Override
+    public void writeRaw(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (_closed) {
+            throw new IOException("Can not write using closed DataWriter");
+        }
+        _out.write(buffer, offset, length);
+        if (_lf != null) {
+            _out.write(_lf);
+        }
+    }
+
     /*
     /**********************************************************************
     /* Helper classes
@@ -0,0 +1,112 @@
+package com.fasterxml.sort.std;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.sort.TempFileProvider;
+
+/**
+ * {@link TempFileProvider} that spreads temporary files over several
+ * directories, usually on different devices, so that both space and
+ * bandwidth of all of them are used. Directories are used round-robin,
+ * skipping ones with less than the minimum usable space left; if all are
+ * that full, the one with most space is used.
+ *<p>
+ * Sorters interleave files of different devices when forming merge groups,
+ * so that each group reads from all devices at the same time.
+ */
+public class StripedTempFileProvider
+    implements TempFileProvider
+{
+    /**
+     * By default directories with less than 256 megs free are skipped
+     */
+    public final static long DEFAULT_MIN_FREE_SPACE = 256L * 1024 * 1024;
+
+    protected final List<File> _dirs;
+
+    protected final long _minFreeSpace;
+
+    protected final String _prefix;
+    protected final String _suffix;
+
+    /**
+     * Index of directory to try first for the next file
+     */
+    protected int _next;
+
+    public StripedTempFileProvider(File... dirs) {
+        this(Arrays.asList(dirs));
+    }
+
+    public StripedTempFileProvider(List<File> dirs) {
+        this(dirs, DEFAULT_MIN_FREE_SPACE,
+                StdTempFileProvider.DEFAULT_PREFIX, StdTempFileProvider.DEFAULT_SUFFIX);
+    }
+
+    public StripedTempFileProvider(List<File> dirs, long minFreeSpace, String prefix, String suffix)
+    {
+        if (dirs.isEmpty()) {
+            throw new IllegalArgumentException("No directories given for temporary files");
+        }
+        _dirs = new ArrayList<File>(dirs);
+        _minFreeSpace = minFreeSpace;
+        _prefix = prefix;
+        _suffix = suffix;
+    }
+
+    /**
+     * Convenience method for parsing list of directories separated by
+     * platform path separator (like <code>PATH</code>), or commas.
+     */
+    public static StripedTempFileProvider forPaths(String paths)
+    {
+        List<File> dirs = new ArrayList<File>();
+        for (String path : paths.split("[,"+File.pathSeparatorChar+"]")) {
+            path = path.trim();
+            if (path.length() > 0) {
+                dirs.add(new File(path));
+            }
+        }
+        return new StripedTempFileProvider(dirs);
+    }
+
+    public List<File> getDirectories() { return _dirs; }
+
+    @Override
+    public File provide() throws IOException
+    {
+        File f = File.createTempFile(_prefix, _suffix, _chooseDirectory());
+        f.deleteOnExit();
+        return f;
+    }
+
+    protected synchronized File _chooseDirectory() throws IOException
+    {
+        final int count = _dirs.size();
+        File best = null;
+        long bestSpace = -1L;
+        for (int i = 0; i < count; ++i) {
+            int index = (_next + i) % count;
+            File dir = _dirs.get(index);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                continue;
+            }
+            long space = dir.getUsableSpace();
+            if (space >= _minFreeSpace) {
+                _next = (index + 1) % count;
+                return dir;
+            }
+            if (space > bestSpace) {
+                best = dir;
+                bestSpace = space;
+            }
+        }
+        if (best == null) {
+            throw new IOException("None of directories "+_dirs+" usable for temporary files");
+        }
+        return best;
+    }
+}
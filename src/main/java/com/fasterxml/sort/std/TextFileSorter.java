@@ -26,9 +26,18 @@ public class TextFileSorter extends Sorter<byte[]>
     }
     
     public TextFileSorter(SortConfig config)
+    {
+        this(config, RawTextLineReader.factory());
+    }
+
+    /**
+     * @param readerFactory Factory for line readers, for example
+     *   {@link MappedLineReader#factory()} to memory-map temporary files
+     */
+    public TextFileSorter(SortConfig config, DataReaderFactory<byte[]> readerFactory)
     {
         super(config,
-                RawTextLineReader.factory(), RawTextLineWriter.factory(),
+                readerFactory, RawTextLineWriter.factory(),
                 new ByteArrayComparator());
     }
 
@@ -0,0 +1,242 @@
+package com.fasterxml.sort.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+
+/**
+ * Output stream that hands its data to a background thread for writing,
+ * using two buffers: while one is being written to the underlying stream,
+ * the other is filled by the caller. Caller only blocks when it fills a
+ * buffer before the previous one has been written.
+ *<p>
+ * Errors from the underlying stream are reported by the next call after
+ * they occur (at the latest by {@link #close}).
+ */
+public class AsyncOutputStream
+    extends OutputStream
+{
+    public final static int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Marker passed to writer thread to make it finish
+     */
+    private final static Chunk END_MARKER = new Chunk(0);
+
+    protected final OutputStream _out;
+
+    /**
+     * Filled buffers waiting to be written
+     */
+    protected final BlockingQueue<Chunk> _full = new ArrayBlockingQueue<Chunk>(2);
+
+    /**
+     * Buffers already written, ready to be filled again
+     */
+    protected final BlockingQueue<Chunk> _free = new ArrayBlockingQueue<Chunk>(2);
+
+    protected final Future<?> _task;
+
+    protected volatile IOException _failure;
+
+    /**
+     * Buffer being filled by caller
+     */
+    protected Chunk _current;
+
+    protected boolean _closed;
+
+    public AsyncOutputStream(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    public AsyncOutputStream(OutputStream out, int bufferSize)
+    {
+        _out = out;
+        _current = new Chunk(bufferSize);
+        _free.add(new Chunk(bufferSize));
+        _task = IOThreads.submit(new Runnable() {
+            @Override
+            public void run() {
+                _writeBuffers();
+            }
+        });
+    }
+
+    /*
+    /**********************************************************************
+    /* OutputStream implementation
+    /**********************************************************************
+     */
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        Chunk c = _current;
+        if (c.length == c.data.length) {
+            _handOff();
+            c = _current;
+        }
+        c.data[c.length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        while (len > 0) {
+            Chunk c = _current;
+            if (c.length == c.data.length) {
+                _handOff();
+                c = _current;
+            }
+            int n = Math.min(len, c.data.length - c.length);
+            System.arraycopy(b, off, c.data, c.length, n);
+            c.length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Waits until all data written so far has been passed to the underlying
+     * stream, and flushes it.
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        if (_current.length > 0) {
+            _handOff();
+        }
+        // once we have both buffers, writer thread is idle
+        Chunk other = _take();
+        try {
+            _checkFailure();
+            _out.flush();
+        } finally {
+            _free.add(other);
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (_closed) {
+            return;
+        }
+        try {
+            if (_current.length > 0 && _failure == null) {
+                _handOff();
+            }
+        } finally {
+            _closed = true;
+            _put(END_MARKER);
+            IOThreads.await(_task);
+            _out.close();
+        }
+        _checkFailure();
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    /**
+     * Passes current buffer to writer thread, and takes the other one
+     */
+    protected void _handOff() throws IOException
+    {
+        if (_closed) {
+            throw new IOException("Stream closed");
+        }
+        _checkFailure();
+        _put(_current);
+        _current = _take();
+        _current.length = 0;
+    }
+
+    protected void _checkFailure() throws IOException
+    {
+        IOException e = _failure;
+        if (e != null) {
+            throw new IOException("Failed to write: "+e.getMessage(), e);
+        }
+    }
+
+    protected void _put(Chunk chunk) throws IOException
+    {
+        try {
+            _full.put(chunk);
+        } catch (InterruptedException e) {
+            throw _interrupted(e);
+        }
+    }
+
+    protected Chunk _take() throws IOException
+    {
+        try {
+            return _free.take();
+        } catch (InterruptedException e) {
+            throw _interrupted(e);
+        }
+    }
+
+    protected static InterruptedIOException _interrupted(InterruptedException e)
+    {
+        InterruptedIOException ie = new InterruptedIOException();
+        ie.initCause(e);
+        return ie;
+    }
+
+    /**
+     * Main loop of writer thread; after a failure buffers are just passed
+     * back, so that the caller never blocks forever.
+     */
+    protected void _writeBuffers()
+    {
+        try {
+            while (true) {
+                Chunk chunk = _full.take();
+                if (chunk == END_MARKER) {
+                    return;
+                }
+                if (_failure == null) {
+                    try {
+                        _out.write(chunk.data, 0, chunk.length);
+                    } catch (IOException e) {
+                        _failure = e;
+                    } catch (RuntimeException e) {
+                        _failure = new IOException(e);
+                    }
+                }
+                _free.put(chunk);
+            }
+        } catch (InterruptedException e) {
+            // only happens if someone else interrupts us; nothing to do
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Buffer with the number of bytes it holds
+     */
+    protected final static class Chunk
+    {
+        public final byte[] data;
+
+        public int length;
+
+        public Chunk(int size) {
+            data = new byte[size];
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.fasterxml.sort.util;
+
+/**
+ * Mutable view of a range of a byte array, used for accessing entries in
+ * their raw form without copying them (see
+ * {@link com.fasterxml.sort.DataReader#readRaw}). Instances are meant to be
+ * reused: the owner of the array may change its contents once the view has
+ * been consumed.
+ */
+public final class ByteSlice
+{
+    protected byte[] _buffer;
+    protected int _offset;
+    protected int _length;
+
+    public ByteSlice() { }
+
+    public void set(byte[] buffer, int offset, int length)
+    {
+        _buffer = buffer;
+        _offset = offset;
+        _length = length;
+    }
+
+    /**
+     * Resets the view to refer to nothing; see {@link #isEmpty}.
+     */
+    public void clear()
+    {
+        _buffer = null;
+        _offset = 0;
+        _length = 0;
+    }
+
+    /**
+     * @return True if view does not refer to any bytes (as opposed to
+     *   referring to zero bytes)
+     */
+    public boolean isEmpty() { return _buffer == null; }
+
+    public byte[] getBuffer() { return _buffer; }
+    public int getOffset() { return _offset; }
+    public int getLength() { return _length; }
+}
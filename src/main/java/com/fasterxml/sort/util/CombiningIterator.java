@@ -0,0 +1,59 @@
+package com.fasterxml.sort.util;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.fasterxml.sort.Combiner;
+
+/**
+ * Iterator that combines adjacent entries of another (sorted) iterator
+ * using a {@link Combiner}.
+ */
+public class CombiningIterator<T> implements Iterator<T>
+{
+    protected final Iterator<T> _it;
+
+    protected final Combiner<T> _combiner;
+
+    /**
+     * Entry read from underlying iterator but not yet returned
+     */
+    protected T _next;
+
+    public CombiningIterator(Iterator<T> it, Combiner<T> combiner)
+    {
+        _it = it;
+        _combiner = combiner;
+        _next = it.hasNext() ? it.next() : null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return (_next != null);
+    }
+
+    @Override
+    public T next()
+    {
+        if (_next == null) {
+            throw new NoSuchElementException();
+        }
+        T result = _next;
+        _next = null;
+        while (_it.hasNext()) {
+            T item = _it.next();
+            T combined = _combiner.combine(result, item);
+            if (combined == null) {
+                _next = item;
+                break;
+            }
+            result = combined;
+        }
+        return result;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
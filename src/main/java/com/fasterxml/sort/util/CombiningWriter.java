@@ -0,0 +1,114 @@
+package com.fasterxml.sort.util;
+
+import java.io.IOException;
+
+import com.fasterxml.sort.Combiner;
+import com.fasterxml.sort.DataWriter;
+
+/**
+ * {@link DataWriter} that combines each entry written with the preceding
+ * one using a {@link Combiner}, if possible, and writes the result using
+ * another writer. One entry is held back until the next one (or close)
+ * shows it can not be combined further. Raw entries are supported if both
+ * the underlying writer and the combiner support them.
+ */
+public class CombiningWriter<T> extends DataWriter<T>
+{
+    protected final DataWriter<T> _writer;
+
+    protected final Combiner<T> _combiner;
+
+    /**
+     * Entry held back, if written as object
+     */
+    protected T _pending;
+
+    /**
+     * Entry held back, if written as raw entry
+     */
+    protected byte[] _pendingRaw = new byte[256];
+
+    protected int _pendingRawLength = -1;
+
+    protected final ByteSlice _first = new ByteSlice();
+    protected final ByteSlice _second = new ByteSlice();
+    protected final ByteSlice _result = new ByteSlice();
+
+    public CombiningWriter(DataWriter<T> writer, Combiner<T> combiner)
+    {
+        _writer = writer;
+        _combiner = combiner;
+    }
+
+    @Override
+    public void writeEntry(T item) throws IOException
+    {
+        if (_pendingRawLength >= 0) {
+            _flushRaw();
+        }
+        if (_pending == null) {
+            _pending = item;
+            return;
+        }
+        T combined = _combiner.combine(_pending, item);
+        if (combined == null) {
+            _writer.writeEntry(_pending);
+            _pending = item;
+        } else {
+            _pending = combined;
+        }
+    }
+
+    @Override
+    public boolean canWriteRaw() {
+        return _writer.canWriteRaw() && _combiner.canCombineRaw();
+    }
+
+    @Override
+    public void writeRaw(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (_pending != null) {
+            _writer.writeEntry(_pending);
+            _pending = null;
+        }
+        if (_pendingRawLength >= 0) {
+            _first.set(_pendingRaw, 0, _pendingRawLength);
+            _second.set(buffer, offset, length);
+            if (_combiner.combineRaw(_first, _second, _result)) {
+                _hold(_result.getBuffer(), _result.getOffset(), _result.getLength());
+                return;
+            }
+            _flushRaw();
+        }
+        _hold(buffer, offset, length);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (_pending != null) {
+            _writer.writeEntry(_pending);
+            _pending = null;
+        }
+        if (_pendingRawLength >= 0) {
+            _flushRaw();
+        }
+        _writer.close();
+    }
+
+    protected void _flushRaw() throws IOException
+    {
+        _writer.writeRaw(_pendingRaw, 0, _pendingRawLength);
+        _pendingRawLength = -1;
+    }
+
+    protected void _hold(byte[] buffer, int offset, int length)
+    {
+        // combined entry may have been built in place
+        if (buffer != _pendingRaw && _pendingRaw.length < length) {
+            _pendingRaw = new byte[Math.max(length, _pendingRaw.length << 1)];
+        }
+        System.arraycopy(buffer, offset, _pendingRaw, 0, length);
+        _pendingRawLength = length;
+    }
+}
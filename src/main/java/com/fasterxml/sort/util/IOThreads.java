@@ -0,0 +1,48 @@
+package com.fasterxml.sort.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared pool of daemon threads used by {@link AsyncOutputStream} and
+ * {@link PrefetchInputStream}; threads are reused across streams, since
+ * sorting may open many short-lived run files.
+ */
+final class IOThreads
+{
+    private final static ExecutorService POOL = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger _count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "sort-io-"+_count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private IOThreads() { }
+
+    public static Future<?> submit(Runnable task) {
+        return POOL.submit(task);
+    }
+
+    /**
+     * Waits for given task to finish; tasks handle their own errors, so
+     * there is nothing to report.
+     */
+    public static void await(Future<?> task)
+    {
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // can not happen, tasks catch everything
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package com.fasterxml.sort.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.fasterxml.sort.DataReader;
+import com.fasterxml.sort.DataWriter;
+import com.fasterxml.sort.RawComparator;
+
+/**
+ * Pre-sort buffer that keeps entries in their raw form (see
+ * {@link DataReader#readRaw}) packed one after another in a few large
+ * chunks, heap or direct {@link ByteBuffer}s, instead of as individual
+ * objects. Sorting is done on primitive arrays that hold a reference to
+ * each entry along with a cached 8-byte prefix of it, so most comparisons
+ * never touch the entries themselves.
+ *<p>
+ * Since everything is allocated by the buffer itself, memory usage is
+ * known exactly: entries take their length plus 4 bytes in a chunk, and
+ * 16 bytes of index each. Buffers are meant to be reused for all runs of
+ * a sort, so chunks and index are only allocated once.
+ */
+public class PackedBuffer
+{
+    /**
+     * Largest chunk allocated, unless a single entry needs more
+     */
+    final static int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    final static int MIN_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Index bytes per entry: prefix key and reference
+     */
+    final static int INDEX_ENTRY_SIZE = 16;
+
+    final static int INITIAL_INDEX_SIZE = 1024;
+
+    /**
+     * Below this many entries, sort with insertion sort
+     */
+    final static int INSERTION_SORT_THRESHOLD = 16;
+
+    /**
+     * Below this many entries, prefix keys are not radix sorted further
+     */
+    final static int RADIX_SORT_THRESHOLD = 64;
+
+    // // // Configuration
+
+    protected final long _memoryToUse;
+
+    protected final int _chunkSize;
+
+    protected final boolean _direct;
+
+    protected final RawComparator _comparator;
+
+    /**
+     * Whether entries are ordered by their unsigned bytes, in which case
+     * prefix keys are used and comparator is not called at all
+     */
+    protected final boolean _bytewise;
+
+    // // // Data storage
+
+    /**
+     * Chunks allocated so far; those up to {@link #_chunkIndex} are in use.
+     */
+    protected final ArrayList<ByteBuffer> _chunks = new ArrayList<ByteBuffer>();
+
+    protected int _chunkIndex;
+
+    /**
+     * Write position in current chunk
+     */
+    protected int _chunkPtr;
+
+    /**
+     * First 8 bytes of each entry as big-endian unsigned long, padded
+     * with zeroes (only used if {@link #_bytewise})
+     */
+    protected long[] _keys;
+
+    /**
+     * Chunk index (high 32 bits) and offset (low 32 bits) of each entry;
+     * grows in input order, so it also serves as the final tie-breaker.
+     */
+    protected long[] _refs;
+
+    protected int _count;
+
+    // // // Scratch space
+
+    /**
+     * Chunks, and their backing arrays for heap chunks, while sorting
+     */
+    protected ByteBuffer[] _sortChunks;
+    protected byte[][] _sortArrays;
+
+    protected final ByteSlice _slice = new ByteSlice();
+
+    /**
+     * Bucket counts and positions for each byte of prefix keys
+     */
+    protected final int[][] _radixCounts = new int[8][256];
+    protected final int[][] _radixNext = new int[8][256];
+
+    protected byte[] _scratch1 = new byte[256];
+    protected byte[] _scratch2 = new byte[256];
+
+    /*
+    /**********************************************************
+    /* Construction
+    /**********************************************************
+     */
+
+    /**
+     * @param memoryToUse Maximum number of bytes to use for entries and index
+     * @param direct Whether to allocate chunks as direct (off-heap) buffers
+     * @param comparator Comparator for raw entries
+     * @param bytewise Whether comparator orders entries by their unsigned
+     *   bytes (shorter first on common prefix), like
+     *   {@link com.fasterxml.sort.std.ByteArrayComparator}
+     */
+    public PackedBuffer(long memoryToUse, boolean direct, RawComparator comparator, boolean bytewise)
+    {
+        _memoryToUse = memoryToUse;
+        _chunkSize = (int) Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, memoryToUse / 8));
+        _direct = direct;
+        _comparator = comparator;
+        _bytewise = bytewise;
+    }
+
+    /*
+    /**********************************************************
+    /* Public API
+    /**********************************************************
+     */
+
+    /**
+     * Method that clears the buffer, and then reads entries from given
+     * reader until the buffer is full or input ends. At least one entry
+     * is always added, if there is one.
+     *<p>
+     * Entry that does not fit is left in <code>carry</code>, which refers
+     * to the reader's buffer; as long as reader is not used otherwise, it
+     * stays valid and is added first by the next call (to this or another
+     * buffer) with the same <code>carry</code>.
+     *
+     * @return True if there may be more input; false if end of input was reached
+     */
+    public boolean fill(DataReader<?> reader, ByteSlice carry) throws IOException
+    {
+        _count = 0;
+        _chunkIndex = 0;
+        _chunkPtr = 0;
+        if (!carry.isEmpty()) {
+            _add(carry.getBuffer(), carry.getOffset(), carry.getLength());
+            carry.clear();
+        }
+        final ByteSlice slice = _slice;
+        while (reader.readRaw(slice)) {
+            if (!_add(slice.getBuffer(), slice.getOffset(), slice.getLength())) {
+                carry.set(slice.getBuffer(), slice.getOffset(), slice.getLength());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return _count;
+    }
+
+    /**
+     * @return Bytes currently allocated by the buffer
+     */
+    public long memoryUsage()
+    {
+        long total = (_keys == null) ? 0L : (long) INDEX_ENTRY_SIZE * _keys.length;
+        for (ByteBuffer chunk : _chunks) {
+            total += chunk.capacity();
+        }
+        return total;
+    }
+
+    public void sort()
+    {
+        final int n = _chunks.size();
+        _sortChunks = _chunks.toArray(new ByteBuffer[n]);
+        _sortArrays = new byte[n][];
+        for (int i = 0; i < n; ++i) {
+            if (_sortChunks[i].hasArray() && _sortChunks[i].arrayOffset() == 0) {
+                _sortArrays[i] = _sortChunks[i].array();
+            }
+        }
+        try {
+            if (_bytewise) {
+                _radixSort(0, _count, 56);
+            } else {
+                _quickSort(0, _count - 1);
+            }
+        } finally {
+            _sortChunks = null;
+            _sortArrays = null;
+        }
+    }
+
+    /**
+     * Method for writing all entries, in current order, using given writer,
+     * which must support {@link DataWriter#writeRaw}.
+     */
+    public void writeTo(DataWriter<?> writer) throws IOException
+    {
+        for (int i = 0, end = _count; i < end; ++i) {
+            long ref = _refs[i];
+            ByteBuffer chunk = _chunks.get((int) (ref >>> 32));
+            int offset = (int) ref;
+            int length = chunk.getInt(offset);
+            if (chunk.hasArray()) {
+                writer.writeRaw(chunk.array(), chunk.arrayOffset() + offset + 4, length);
+            } else {
+                byte[] b = _scratch1 = _copy(chunk, offset, length, _scratch1);
+                writer.writeRaw(b, 0, length);
+            }
+        }
+    }
+
+    /*
+    /**********************************************************
+    /* Internal methods, adding entries
+    /**********************************************************
+     */
+
+    /**
+     * @return True if entry was added; false if buffer is full
+     */
+    protected boolean _add(byte[] buffer, int offset, int length)
+    {
+        if (_keys == null || _count == _keys.length) {
+            int newSize = (_keys == null) ? INITIAL_INDEX_SIZE : (_keys.length << 1);
+            if (_count > 0 && !_fits(_chunkBytesInUse() + (long) INDEX_ENTRY_SIZE * newSize)) {
+                return false;
+            }
+            if (_keys == null) {
+                _keys = new long[newSize];
+                _refs = new long[newSize];
+            } else {
+                _keys = Arrays.copyOf(_keys, newSize);
+                _refs = Arrays.copyOf(_refs, newSize);
+            }
+        }
+        final int needed = 4 + length;
+        ByteBuffer chunk = _chunks.isEmpty() ? null : _chunks.get(_chunkIndex);
+        if (chunk == null || _chunkPtr + needed > chunk.capacity()) {
+            // either start using a new chunk, or reuse one allocated earlier
+            int index = (chunk == null) ? 0 : _chunkIndex + 1;
+            if (index < _chunks.size() && _chunks.get(index).capacity() >= needed) {
+                chunk = _chunks.get(index);
+            } else {
+                int size = Math.max(_chunkSize, needed);
+                if (_count > 0 && !_fits(_chunkBytesInUse() + size + _indexBytes())) {
+                    return false;
+                }
+                chunk = _direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+                if (index < _chunks.size()) { // replaces one too small for entry
+                    _chunks.set(index, chunk);
+                } else {
+                    _chunks.add(chunk);
+                }
+            }
+            _chunkIndex = index;
+            _chunkPtr = 0;
+        }
+        final int ptr = _chunkPtr;
+        chunk.putInt(ptr, length);
+        if (chunk.hasArray()) {
+            System.arraycopy(buffer, offset, chunk.array(), chunk.arrayOffset() + ptr + 4, length);
+        } else {
+            ByteBuffer dup = chunk.duplicate();
+            dup.position(ptr + 4);
+            dup.put(buffer, offset, length);
+        }
+        _chunkPtr = ptr + needed;
+        _refs[_count] = ((long) _chunkIndex << 32) | ptr;
+        _keys[_count] = _bytewise ? _prefixKey(buffer, offset, length) : 0L;
+        ++_count;
+        return true;
+    }
+
+    protected boolean _fits(long bytes) {
+        return bytes <= _memoryToUse;
+    }
+
+    /**
+     * @return Bytes of chunks used by current entries, including the one
+     *   being filled
+     */
+    protected long _chunkBytesInUse()
+    {
+        long total = 0L;
+        for (int i = 0, end = Math.min(_chunkIndex + 1, _chunks.size()); i < end; ++i) {
+            total += _chunks.get(i).capacity();
+        }
+        return total;
+    }
+
+    protected long _indexBytes() {
+        return (long) INDEX_ENTRY_SIZE * _keys.length;
+    }
+
+    protected static long _prefixKey(byte[] buffer, int offset, int length)
+    {
+        long key = 0L;
+        final int end = Math.min(length, 8);
+        for (int i = 0; i < end; ++i) {
+            key = (key << 8) | (buffer[offset + i] & 0xFF);
+        }
+        return key << ((8 - end) << 3);
+    }
+
+    /*
+    /**********************************************************
+    /* Internal methods, sorting
+    /**********************************************************
+     */
+
+    /**
+     * Compares entries at given index positions; never returns 0 for
+     * different entries, as input order breaks ties.
+     */
+    protected int _compare(int i1, int i2)
+    {
+        int diff = Long.compareUnsigned(_keys[i1], _keys[i2]);
+        if (diff != 0) {
+            return diff;
+        }
+        final long ref1 = _refs[i1];
+        final long ref2 = _refs[i2];
+        final int chunk1 = (int) (ref1 >>> 32);
+        final int chunk2 = (int) (ref2 >>> 32);
+        final int off1 = (int) ref1;
+        final int off2 = (int) ref2;
+        final byte[] a1 = _sortArrays[chunk1];
+        final byte[] a2 = _sortArrays[chunk2];
+        if (a1 != null && a2 != null) {
+            final int len1 = _int(a1, off1);
+            final int len2 = _int(a2, off2);
+            if (_bytewise) {
+                diff = _compareBytes(a1, off1 + 4, len1, a2, off2 + 4, len2);
+            } else {
+                diff = _comparator.compareRaw(a1, off1 + 4, len1, a2, off2 + 4, len2);
+            }
+        } else {
+            final ByteBuffer c1 = _sortChunks[chunk1];
+            final ByteBuffer c2 = _sortChunks[chunk2];
+            final int len1 = c1.getInt(off1);
+            final int len2 = c2.getInt(off2);
+            if (_bytewise) {
+                diff = _compareBytes(c1, off1 + 4, len1, c2, off2 + 4, len2);
+            } else {
+                byte[] b1 = _scratch1 = _copy(c1, off1, len1, _scratch1);
+                byte[] b2 = _scratch2 = _copy(c2, off2, len2, _scratch2);
+                diff = _comparator.compareRaw(b1, 0, len1, b2, 0, len2);
+            }
+        }
+        if (diff != 0) {
+            return diff;
+        }
+        return (ref1 < ref2) ? -1 : ((ref1 == ref2) ? 0 : 1);
+    }
+
+    /**
+     * Unsigned byte comparison for entries with equal prefix keys, so that
+     * first 8 bytes (or all of shorter entries) are known to be equal.
+     */
+    protected static int _compareBytes(ByteBuffer c1, int off1, int len1, ByteBuffer c2, int off2, int len2)
+    {
+        final int len = Math.min(len1, len2);
+        int i = 8;
+        for (; i + 8 <= len; i += 8) {
+            int diff = Long.compareUnsigned(c1.getLong(off1 + i), c2.getLong(off2 + i));
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        for (; i < len; ++i) {
+            int diff = (c1.get(off1 + i) & 0xFF) - (c2.get(off2 + i) & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return len1 - len2;
+    }
+
+    protected static int _compareBytes(byte[] b1, int off1, int len1, byte[] b2, int off2, int len2)
+    {
+        final int len = Math.min(len1, len2);
+        for (int i = 8; i < len; ++i) {
+            int diff = (b1[off1 + i] & 0xFF) - (b2[off2 + i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return len1 - len2;
+    }
+
+    /**
+     * Reads length prefix of an entry, as written by {@link ByteBuffer#putInt}
+     */
+    protected static int _int(byte[] b, int i)
+    {
+        return (b[i] << 24) | ((b[i + 1] & 0xFF) << 16) | ((b[i + 2] & 0xFF) << 8) | (b[i + 3] & 0xFF);
+    }
+
+    protected static byte[] _copy(ByteBuffer chunk, int offset, int length, byte[] dst)
+    {
+        if (dst.length < length) {
+            dst = new byte[Math.max(length, dst.length << 1)];
+        }
+        ByteBuffer dup = chunk.duplicate();
+        dup.position(offset + 4);
+        dup.get(dst, 0, length);
+        return dst;
+    }
+
+    /**
+     * In-place MSD radix sort (American flag sort) of range
+     * <code>[lo, hi)</code> by prefix key bytes, starting with the one at
+     * given bit shift; ranges with equal keys, and small ones, are then
+     * sorted by comparison.
+     */
+    protected void _radixSort(int lo, int hi, int shift)
+    {
+        final long[] keys = _keys;
+        while (hi - lo >= RADIX_SORT_THRESHOLD) {
+            if (shift < 0) { // whole keys equal
+                _quickSort(lo, hi - 1);
+                return;
+            }
+            final int level = 7 - (shift >> 3);
+            final int[] count = _radixCounts[level];
+            final int[] next = _radixNext[level];
+            Arrays.fill(count, 0);
+            for (int i = lo; i < hi; ++i) {
+                ++count[(int) (keys[i] >>> shift) & 0xFF];
+            }
+            if (count[(int) (keys[lo] >>> shift) & 0xFF] == hi - lo) {
+                shift -= 8;
+                continue;
+            }
+            int pos = lo;
+            for (int b = 0; b < 256; ++b) {
+                next[b] = pos;
+                pos += count[b];
+            }
+            for (int b = 0, end = lo; b < 256; ++b) {
+                end += count[b];
+                while (next[b] < end) {
+                    int i = next[b];
+                    int target = (int) (keys[i] >>> shift) & 0xFF;
+                    while (target != b) {
+                        _swap(i, next[target]++);
+                        target = (int) (keys[i] >>> shift) & 0xFF;
+                    }
+                    ++next[b];
+                }
+            }
+            int start = lo;
+            for (int b = 0; b < 256; ++b) {
+                int end = start + count[b];
+                if (end - start > 1) {
+                    _radixSort(start, end, shift - 8);
+                }
+                start = end;
+            }
+            return;
+        }
+        _quickSort(lo, hi - 1);
+    }
+
+    protected void _quickSort(int lo, int hi)
+    {
+        while (hi - lo >= INSERTION_SORT_THRESHOLD) {
+            // median of three as pivot, moved to 'lo'
+            int mid = (lo + hi) >>> 1;
+            if (_compare(mid, lo) < 0) _swap(mid, lo);
+            if (_compare(hi, lo) < 0) _swap(hi, lo);
+            if (_compare(hi, mid) < 0) _swap(hi, mid);
+            _swap(lo, mid);
+            // entries are all distinct, so plain Hoare partitioning works well
+            int i = lo;
+            int j = hi + 1;
+            while (true) {
+                while (_compare(++i, lo) < 0 && i < hi) { }
+                while (_compare(lo, --j) < 0) { }
+                if (i >= j) {
+                    break;
+                }
+                _swap(i, j);
+            }
+            _swap(lo, j);
+            // recurse into smaller half, loop on larger one
+            if (j - lo < hi - j) {
+                _quickSort(lo, j - 1);
+                lo = j + 1;
+            } else {
+                _quickSort(j + 1, hi);
+                hi = j - 1;
+            }
+        }
+        for (int i = lo + 1; i <= hi; ++i) {
+            for (int j = i; j > lo && _compare(j, j - 1) < 0; --j) {
+                _swap(j, j - 1);
+            }
+        }
+    }
+
+    protected void _swap(int i, int j)
+    {
+        long k = _keys[i];
+        _keys[i] = _keys[j];
+        _keys[j] = k;
+        long r = _refs[i];
+        _refs[i] = _refs[j];
+        _refs[j] = r;
+    }
+}
@@ -0,0 +1,242 @@
+package com.fasterxml.sort.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+
+/**
+ * Input stream that reads ahead from the underlying stream on a background
+ * thread, using two buffers: while the caller consumes one, the other is
+ * being filled. Caller only blocks when it gets ahead of the reader thread.
+ *<p>
+ * Errors from the underlying stream are reported once the caller has
+ * consumed all data read before them.
+ */
+public class PrefetchInputStream
+    extends InputStream
+{
+    public final static int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Marker passed to reader thread to make it stop
+     */
+    private final static Chunk STOP_MARKER = new Chunk(0);
+
+    protected final InputStream _in;
+
+    /**
+     * Filled buffers, in reading order; a buffer with negative length
+     * marks end of input (or failure)
+     */
+    protected final BlockingQueue<Chunk> _full = new ArrayBlockingQueue<Chunk>(3);
+
+    /**
+     * Buffers already consumed, ready to be filled again
+     */
+    protected final BlockingQueue<Chunk> _free = new ArrayBlockingQueue<Chunk>(3);
+
+    protected final Future<?> _task;
+
+    /**
+     * Buffer being consumed by caller, if any
+     */
+    protected Chunk _current;
+
+    protected int _ptr;
+
+    protected boolean _eof;
+
+    protected boolean _closed;
+
+    public PrefetchInputStream(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public PrefetchInputStream(InputStream in, int bufferSize)
+    {
+        _in = in;
+        _free.add(new Chunk(bufferSize));
+        _free.add(new Chunk(bufferSize));
+        _task = IOThreads.submit(new Runnable() {
+            @Override
+            public void run() {
+                _readBuffers();
+            }
+        });
+    }
+
+    /*
+    /**********************************************************************
+    /* InputStream implementation
+    /**********************************************************************
+     */
+
+    @Override
+    public int read() throws IOException
+    {
+        if (!_ensureData()) {
+            return -1;
+        }
+        return _current.data[_ptr++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0) {
+            return 0;
+        }
+        if (!_ensureData()) {
+            return -1;
+        }
+        int n = Math.min(len, _current.length - _ptr);
+        System.arraycopy(_current.data, _ptr, b, off, n);
+        _ptr += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return (_current == null) ? 0 : (_current.length - _ptr);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        _eof = true;
+        // reader stops at the latest after filling remaining free buffers
+        _free.add(STOP_MARKER);
+        IOThreads.await(_task);
+        _current = null;
+        _in.close();
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    /**
+     * @return True if current buffer has data left, after switching to the
+     *   next one if needed; false at end of input
+     */
+    protected boolean _ensureData() throws IOException
+    {
+        while (_current == null || _ptr >= _current.length) {
+            if (_eof) {
+                return false;
+            }
+            if (_current != null) {
+                _free.add(_current);
+                _current = null;
+            }
+            Chunk chunk;
+            try {
+                chunk = _full.take();
+            } catch (InterruptedException e) {
+                InterruptedIOException ie = new InterruptedIOException();
+                ie.initCause(e);
+                throw ie;
+            }
+            if (chunk.length < 0) {
+                _eof = true;
+                if (chunk.failure != null) {
+                    throw new IOException("Failed to read: "+chunk.failure.getMessage(), chunk.failure);
+                }
+                return false;
+            }
+            _current = chunk;
+            _ptr = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Main loop of reader thread: fills free buffers until end of input,
+     * failure, or {@link #close}.
+     */
+    protected void _readBuffers()
+    {
+        try {
+            while (true) {
+                Chunk chunk = _free.take();
+                if (chunk == STOP_MARKER) {
+                    return;
+                }
+                try {
+                    chunk.length = _fill(chunk.data);
+                } catch (IOException e) {
+                    _full.put(Chunk.end(e));
+                    return;
+                } catch (RuntimeException e) {
+                    _full.put(Chunk.end(new IOException(e)));
+                    return;
+                }
+                if (chunk.length == 0) {
+                    _full.put(Chunk.end(null));
+                    return;
+                }
+                _full.put(chunk);
+            }
+        } catch (InterruptedException e) {
+            // only happens if someone else interrupts us; nothing to do
+        }
+    }
+
+    /**
+     * Reads until buffer is full or input ends.
+     */
+    protected int _fill(byte[] buffer) throws IOException
+    {
+        int count = 0;
+        while (count < buffer.length) {
+            int n = _in.read(buffer, count, buffer.length - count);
+            if (n < 0) {
+                break;
+            }
+            count += n;
+        }
+        return count;
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Buffer with the number of bytes it holds
+     */
+    protected final static class Chunk
+    {
+        public final byte[] data;
+
+        public int length;
+
+        public IOException failure;
+
+        public Chunk(int size) {
+            data = new byte[size];
+        }
+
+        /**
+         * @return Marker for end of input, caused by given failure if not null
+         */
+        public static Chunk end(IOException failure) {
+            Chunk chunk = new Chunk(0);
+            chunk.length = -1;
+            chunk.failure = failure;
+            return chunk;
+        }
+    }
+}
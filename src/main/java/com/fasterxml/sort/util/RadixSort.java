@@ -0,0 +1,161 @@
+package com.fasterxml.sort.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.fasterxml.sort.std.ByteArrayComparator;
+
+/**
+ * In-place MSD radix sort (American flag sort) for byte arrays, giving the
+ * same order as {@link ByteArrayComparator}: entries are distributed into
+ * buckets by the byte at current depth, and each bucket is then sorted by
+ * the following bytes. Shared prefixes are thus scanned once per bucket
+ * instead of once per comparison, which suits short keys with long common
+ * prefixes (like sorted text tokens) well.
+ *<p>
+ * Sort is not stable, which does not matter for byte arrays that compare
+ * equal only when their contents are equal.
+ */
+public class RadixSort
+{
+    /**
+     * Ranges smaller than this are sorted with insertion sort
+     */
+    final static int INSERTION_SORT_THRESHOLD = 32;
+
+    /**
+     * Beyond this depth, rest of range is sorted by comparison, to limit
+     * recursion for entries with very long common prefixes
+     */
+    final static int MAX_DEPTH = 256;
+
+    /**
+     * Bucket counts and positions per depth, reused between ranges
+     */
+    protected int[][] _counts = new int[16][];
+    protected int[][] _next = new int[16][];
+
+    public RadixSort() { }
+
+    /**
+     * Sorts given entries, all of which must be <code>byte[]</code>s.
+     */
+    public static void sort(Object[] items)
+    {
+        new RadixSort().sort(items, 0, items.length);
+    }
+
+    public void sort(Object[] items, int from, int to)
+    {
+        _sort(items, from, to, 0);
+    }
+
+    protected void _sort(Object[] items, int lo, int hi, int depth)
+    {
+        while (hi - lo >= INSERTION_SORT_THRESHOLD) {
+            if (depth >= MAX_DEPTH) {
+                _comparisonSort(items, lo, hi, depth);
+                return;
+            }
+            if (depth == _counts.length) {
+                _counts = Arrays.copyOf(_counts, depth << 1);
+                _next = Arrays.copyOf(_next, depth << 1);
+            }
+            int[] count = _counts[depth];
+            int[] next = _next[depth];
+            if (count == null) {
+                _counts[depth] = count = new int[257];
+                _next[depth] = next = new int[257];
+            } else {
+                Arrays.fill(count, 0);
+            }
+            // bucket 0 is for entries that end before this depth
+            for (int i = lo; i < hi; ++i) {
+                ++count[_bucket((byte[]) items[i], depth)];
+            }
+            // all in same bucket: just move on to next byte
+            int single = _bucket((byte[]) items[lo], depth);
+            if (count[single] == hi - lo) {
+                if (single == 0) {
+                    return;
+                }
+                ++depth;
+                continue;
+            }
+            int pos = lo;
+            for (int b = 0; b < 257; ++b) {
+                next[b] = pos;
+                pos += count[b];
+            }
+            // permute in place: cycle entries into their buckets
+            for (int b = 0, end = lo; b < 257; ++b) {
+                end += count[b];
+                while (next[b] < end) {
+                    Object item = items[next[b]];
+                    int target = _bucket((byte[]) item, depth);
+                    while (target != b) {
+                        Object tmp = items[next[target]];
+                        items[next[target]++] = item;
+                        item = tmp;
+                        target = _bucket((byte[]) item, depth);
+                    }
+                    items[next[b]++] = item;
+                }
+            }
+            // and then sort buckets by following bytes
+            int start = lo + count[0];
+            for (int b = 1; b < 257; ++b) {
+                int end = start + count[b];
+                if (end - start > 1) {
+                    _sort(items, start, end, depth + 1);
+                }
+                start = end;
+            }
+            return;
+        }
+        _insertionSort(items, lo, hi, depth);
+    }
+
+    protected static int _bucket(byte[] item, int depth) {
+        return (depth < item.length) ? (item[depth] & 0xFF) + 1 : 0;
+    }
+
+    protected static void _insertionSort(Object[] items, int lo, int hi, int depth)
+    {
+        for (int i = lo + 1; i < hi; ++i) {
+            Object item = items[i];
+            byte[] key = (byte[]) item;
+            int j = i;
+            while (j > lo && _compare((byte[]) items[j - 1], key, depth) > 0) {
+                items[j] = items[j - 1];
+                --j;
+            }
+            items[j] = item;
+        }
+    }
+
+    /**
+     * Compares entries known to have their first <code>depth</code> bytes equal
+     */
+    protected static int _compare(byte[] b1, byte[] b2, int depth)
+    {
+        final int len = Math.min(b1.length, b2.length);
+        for (int i = depth; i < len; ++i) {
+            int diff = (b1[i] & 0xFF) - (b2[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return b1.length - b2.length;
+    }
+
+    protected static void _comparisonSort(Object[] items, int lo, int hi, final int depth)
+    {
+        Arrays.sort(items, lo, hi, new Comparator<Object>() {
+            @Override
+            public int compare(Object o1, Object o2) {
+                return _compare((byte[]) o1, (byte[]) o2, depth);
+            }
+        });
+    }
+}
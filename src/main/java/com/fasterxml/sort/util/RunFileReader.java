@@ -0,0 +1,77 @@
+package com.fasterxml.sort.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.fasterxml.sort.DataReader;
+
+/**
+ * Wrapper for reader of a temporary file, that closes the reader and
+ * deletes the file as soon as end of input is reached (or reader is
+ * closed), instead of keeping it until all inputs of a merge are done.
+ * This frees disk space during long merges.
+ */
+public class RunFileReader<T>
+    extends DataReader<T>
+{
+    protected final DataReader<T> _reader;
+
+    protected final File _file;
+
+    protected boolean _released;
+
+    public RunFileReader(DataReader<T> reader, File file)
+    {
+        _reader = reader;
+        _file = file;
+    }
+
+    @Override
+    public T readNext() throws IOException
+    {
+        if (_released) {
+            return null;
+        }
+        T value = _reader.readNext();
+        if (value == null) {
+            close();
+        }
+        return value;
+    }
+
+    @Override
+    public int estimateSizeInBytes(T item) {
+        return _reader.estimateSizeInBytes(item);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (!_released) {
+            _released = true;
+            try {
+                _reader.close();
+            } finally {
+                _file.delete();
+            }
+        }
+    }
+
+    @Override
+    public boolean canReadRaw() {
+        return _reader.canReadRaw();
+    }
+
+    @Override
+    public boolean readRaw(ByteSlice slice) throws IOException
+    {
+        if (_released) {
+            return false;
+        }
+        if (!_reader.readRaw(slice)) {
+            close();
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,143 @@
+package dict.build;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Reads a raw text file with several threads. The file is split into byte
+ * ranges that start and end on line boundaries, and each range is read by its
+ * own {@link LineHandler}, so handlers never need to be thread-safe.
+ *
+ * @author Jennifer
+ */
+public class CorpusScanner {
+
+	public interface LineHandler extends Closeable {
+		void line(String line) throws IOException;
+	}
+
+	public interface LineHandlerFactory {
+		/**
+		 * @param part index of the byte range, in file order
+		 */
+		LineHandler create(int part) throws IOException;
+	}
+
+	/**
+	 * Splits the file into at most <code>parts</code> byte ranges, each of
+	 * them ending right after a line feed (or at end of file).
+	 *
+	 * @return start offsets of the ranges, plus the file length as last entry
+	 */
+	public static long[] split(File file, int parts) throws IOException {
+		long length = file.length();
+		List<Long> bounds = Lists.newArrayList();
+		bounds.add(0L);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			for (int i = 1; i < parts; ++i) {
+				long pos = Math.max(length * i / parts, bounds.get(bounds.size() - 1));
+				if (pos >= length) break;
+				raf.seek(pos);
+				int b;
+				while ((b = raf.read()) >= 0 && b != '\n') {
+				}
+				pos = raf.getFilePointer();
+				if (pos >= length) break;
+				if (pos > bounds.get(bounds.size() - 1)) {
+					bounds.add(pos);
+				}
+			}
+		}
+		bounds.add(length);
+		long[] result = new long[bounds.size()];
+		for (int i = 0; i < result.length; ++i) {
+			result[i] = bounds.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Feeds every line of the file to handlers created by the factory, using
+	 * up to <code>threads</code> threads. Handlers are closed when their range
+	 * is done.
+	 *
+	 * @return number of ranges (and handlers) used
+	 */
+	public static int scan(final File file, int threads, final LineHandlerFactory factory)
+			throws IOException {
+		final long[] bounds = split(file, Math.max(1, threads));
+		final int parts = bounds.length - 1;
+		if (parts == 1) {
+			scan(file, 0, bounds[1], factory.create(0));
+			return 1;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(parts);
+		try {
+			List<Future<Void>> futures = Lists.newArrayList();
+			for (int i = 0; i < parts; ++i) {
+				final int part = i;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						scan(file, bounds[part], bounds[part + 1], factory.create(part));
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				get(future);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return parts;
+	}
+
+	/**
+	 * Waits for the result of a task, rethrowing its failure as an
+	 * <code>IOException</code>.
+	 */
+	static <T> T get(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static void scan(File file, long start, long end, LineHandler handler) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			ByteStreams.skipFully(in, start);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					ByteStreams.limit(in, end - start), Charsets.UTF_8));
+			String line = null;
+			while (null != (line = reader.readLine())) {
+				handler.line(line);
+			}
+		} finally {
+			handler.close();
+		}
+	}
+}
@@ -50,6 +50,14 @@ public class CounterMap implements Serializable {
 		return value;
 	}
 	
+	public int total() {
+		int total = 0;
+		for (Integer value : count.values()) {
+			total += value;
+		}
+		return total;
+	}
+
 	public Map<String, Integer> countAll() {
 		return count;
 	}
@@ -1,18 +1,29 @@
 package dict.build;
 
 import java.io.*;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import com.fasterxml.sort.DataReader;
+import com.fasterxml.sort.DataWriter;
+import com.fasterxml.sort.RunFileCodec;
+import com.fasterxml.sort.Combiner;
 import com.fasterxml.sort.SortConfig;
+import com.fasterxml.sort.TempFileProvider;
+import com.fasterxml.sort.std.LineCountCombiner;
+import com.fasterxml.sort.std.MappedLineReader;
 import com.fasterxml.sort.std.TextFileSorter;
 import com.google.common.base.Charsets;
-import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
-import com.googlecode.concurrenttrees.radix.ConcurrentRadixTree;
-import com.googlecode.concurrenttrees.radix.RadixTree;
-import com.googlecode.concurrenttrees.radix.node.concrete.DefaultCharArrayNodeFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,20 +37,130 @@ public class FastBuilder {
 	private static final Logger LOG = LoggerFactory.getLogger(FastBuilder.class);
 
 	/**
-	 * Let's limit maximum memory used for pre-sorting when invoked from
-	 * command-line to be 256 megs
+	 * Heap kept out of the sort budget, for everything else running at the
+	 * same time, like reader and writer buffers
 	 */
-	public final static long MAX_HEAP_FOR_PRESORT = 256L * 1024 * 1024;
+	public final static long HEAP_RESERVE = 64L * 1024 * 1024;
 
 	/**
 	 * Also just in case our calculations are wrong, require 10 megs for
 	 * pre-sort anyway (if invoked from CLI)
 	 */
 	public final static long MIN_HEAP_FOR_PRESORT = 10L * 1024 * 1024;
+
+	/**
+	 * Candidates handed to a scoring thread at a time.
+	 */
+	private final static int SCORE_BATCH_SIZE = 4096;
 	
 	
 	public final static String stopwords = "的很了么呢是嘛个都也比还这于不与才上用就好在和对挺去后没说";
-	
+
+	/**
+	 * How n-gram frequencies and right entropies are counted.
+	 */
+	public enum CountMode {
+		/**
+		 * Write every n-gram to disk, sort and count (default).
+		 */
+		SORT,
+		/**
+		 * Count n-grams in memory with {@link NgramCounter}, spilling sorted
+		 * runs only when the memory budget is exceeded.
+		 */
+		MEMORY,
+		/**
+		 * Like {@link #SORT}, but compute entropies with a
+		 * {@link SortedNgramCounter} while reading the sorted n-grams, in
+		 * constant memory however many n-grams share a first char; the
+		 * frequencies then need one more sort.
+		 */
+		STREAM
+	}
+
+	private final Normalizer normalizer = new Normalizer(stopwords);
+
+	private CountMode countMode = CountMode.SORT;
+
+	private int threads = 1;
+
+	private RunFileCodec runFileCodec;
+
+	private TempFileProvider tempFileProvider;
+
+	private RecordFormat format = RecordFormat.TEXT;
+
+	private Thresholds thresholds = Thresholds.DEFAULT;
+
+	public CountMode getCountMode() {
+		return countMode;
+	}
+
+	public void setCountMode(CountMode countMode) {
+		this.countMode = countMode;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Number of threads used to scan the raw file, sort and score candidate
+	 * words; output does not depend on it.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Number of threads must be at least 1, got: " + threads);
+		}
+		this.threads = threads;
+	}
+
+	public RunFileCodec getRunFileCodec() {
+		return runFileCodec;
+	}
+
+	/**
+	 * Codec for the temporary runs of the external sort, null (default) for
+	 * plain text.
+	 */
+	public void setRunFileCodec(RunFileCodec runFileCodec) {
+		this.runFileCodec = runFileCodec;
+	}
+
+	public TempFileProvider getTempFileProvider() {
+		return tempFileProvider;
+	}
+
+	/**
+	 * Provider of the temporary runs of the external sort, null (default) for
+	 * the system temporary directory.
+	 */
+	public void setTempFileProvider(TempFileProvider tempFileProvider) {
+		this.tempFileProvider = tempFileProvider;
+	}
+
+	public RecordFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Format of the frequency and entropy files, text by default.
+	 */
+	public void setFormat(RecordFormat format) {
+		this.format = format;
+	}
+
+	public Thresholds getThresholds() {
+		return thresholds;
+	}
+
+	/**
+	 * Cutoffs for words kept by {@link #extractWords}, see
+	 * {@link Thresholds#DEFAULT} for the default.
+	 */
+	public void setThresholds(Thresholds thresholds) {
+		this.thresholds = thresholds;
+	}
 	
 	/**
 	 * 输入的字符是否是汉字
@@ -102,31 +223,178 @@ public class FastBuilder {
 		return out.getAbsolutePath();
 	}
 
-	private String reverse(String raw) {
-		StringBuilder bui = new StringBuilder();
-		for (int i = raw.length() - 1; i >= 0; --i)
-			bui.append(raw.charAt(i));
-		return bui.toString();
+	/**
+	 * Entropy (in bits) of a neighbour distribution. Counts must be given in
+	 * ascending order of the neighbour char, so that every counting mode sums
+	 * them in the same order and writes the same value.
+	 */
+	static double entropy(int[] counts, int n, int freq) {
+		double re = 0;
+		for (int i = 0; i < n; ++i) {
+			double p = counts[i] * 1.0 / freq;
+			re += -1 * Math.log(p) / Math.log(2) * p;
+		}
+		return re;
 	}
 
 	public void sortFile(File in, File out) {
+		sortFile(Collections.singletonList(in), out);
+	}
+
+	/**
+	 * Sorts the concatenation of the given files.
+	 */
+	public void sortFile(List<File> in, File out) {
+		sortFile(in, out, null);
+	}
+
+	/**
+	 * Sorts the concatenation of the given files, combining adjacent lines
+	 * with the combiner, if any.
+	 */
+	private void sortFile(List<File> in, File out, Combiner<byte[]> combiner) {
 		try {
-			long availMem = Runtime.getRuntime().maxMemory()
-					- (40 * 1024 * 1024);
-			long maxMem = (availMem >> 1);
-			if (maxMem > MAX_HEAP_FOR_PRESORT) {
-				maxMem = MAX_HEAP_FOR_PRESORT;
-			} else if (maxMem < MIN_HEAP_FOR_PRESORT) {
-				maxMem = MIN_HEAP_FOR_PRESORT;
+			long size = 0;
+			for (File f : in) {
+				size += f.length();
+			}
+			final TextFileSorter sorter = new TextFileSorter(sortConfig(size));
+			sorter.setCombiner(combiner);
+			List<InputStream> inputs = Lists.newArrayList();
+			for (File f : in) {
+				inputs.add(new FileInputStream(f));
 			}
-			final TextFileSorter sorter = new TextFileSorter(
-					new SortConfig().withMaxMemoryUsage(maxMem));
-			sorter.sort(new FileInputStream(in), new PrintStream(out));
+			sorter.sort(new SequenceInputStream(Collections.enumeration(inputs)), new PrintStream(out));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Sorts a frequency or entropy file by word.
+	 */
+	private void sortRecords(File in, File out) throws IOException {
+		if (format == RecordFormat.TEXT) {
+			sortFile(in, out);
+			return;
+		}
+		new RecordSorter(sortConfig(in.length())).sort(new FileInputStream(in), new FileOutputStream(out));
+	}
+
+	private SortConfig sortConfig(long inputSize) {
+		return plan(baseConfig().withPresortThreads(threads).withMergeThreads(threads)
+				.withRunFileCodec(runFileCodec).withPresortMode(SortConfig.PresortMode.PACKED), inputSize);
+	}
+
+	private SortConfig baseConfig() {
+		SortConfig config = new SortConfig();
+		return null == tempFileProvider ? config : config.withTempFileProvider(tempFileProvider);
+	}
+
+	/**
+	 * Sizes the sort for the input with the heap beyond
+	 * {@link #HEAP_RESERVE}, but at least <code>MIN_HEAP_FOR_PRESORT</code>.
+	 * Sorts run one at a time, after the n-gram counters are gone, so they
+	 * can have all of it.
+	 */
+	private static SortConfig plan(SortConfig config, long inputSize) {
+		long maxMem = Math.max(MIN_HEAP_FOR_PRESORT, Runtime.getRuntime().maxMemory() - HEAP_RESERVE);
+		config = config.withPlan(maxMem, inputSize);
+		LOG.info("sort plan: " + config.getPlan());
+		return config;
+	}
+
+	private File recordFile(File dir, String name) {
+		return new File(dir, format.fileName(name));
+	}
+
+	private DataReader<NgramRecord> recordReader(File file) throws IOException {
+		return format.readerFactory().constructReader(new FileInputStream(file));
+	}
+
+	private DataWriter<NgramRecord> recordWriter(File file) throws IOException {
+		return format.writerFactory().constructWriter(new FileOutputStream(file));
+	}
+
+	/**
+	 * Converts raw lines to sentences with the {@link Normalizer}, wraps them
+	 * in <code>$</code> in place and feeds their n-grams to the sinks: the
+	 * forward ones to the right sink, the reversed ones to the left sink.
+	 * Either sink may be null.
+	 */
+	private class SentenceHandler implements CorpusScanner.LineHandler, Normalizer.SentenceHandler {
+
+		private final NgramSink rightSink;
+		private final NgramSink leftSink;
+		private final int maxLen;
+
+		private char[] buf = new char[256];
+
+		SentenceHandler(NgramSink right, NgramSink left, int maxLen) {
+			this.rightSink = right;
+			this.leftSink = left;
+			this.maxLen = maxLen;
+		}
+
+		@Override
+		public void line(String line) throws IOException {
+			int len = line.length();
+			if (buf.length < len + 2) {
+				buf = new char[len + 2 + (len >> 1)];
+			}
+			// leave a slot on both sides for the '$' of the first and last sentence
+			line.getChars(0, len, buf, 1);
+			normalizer.split(buf, 1, len + 1, this);
+		}
+
+		@Override
+		public void sentence(char[] buf, int start, int end) throws IOException {
+			buf[start - 1] = '$';
+			buf[end] = '$';
+			if (null != rightSink) rightSink.sentence(buf, start - 1, end + 1, maxLen, false);
+			if (null != leftSink) leftSink.sentence(buf, start - 1, end + 1, maxLen, true);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (null != rightSink) rightSink.close();
+			if (null != leftSink) leftSink.close();
+		}
+	}
+
+	/**
+	 * Writes every n-gram of the raw file, one per line, to
+	 * <code>rightFile</code> and every n-gram of the reversed sentences to
+	 * <code>leftFile</code>; either may be null. With more than one thread
+	 * each thread writes its own part files, see {@link #ngramParts}.
+	 *
+	 * @return number of parts written
+	 */
+	private int writeNgrams(File rawFile, final File rightFile, final File leftFile, final int maxLen)
+			throws IOException {
+		return CorpusScanner.scan(rawFile, threads, new CorpusScanner.LineHandlerFactory() {
+			@Override
+			public CorpusScanner.LineHandler create(int part) throws IOException {
+				return new SentenceHandler(
+						null == rightFile ? null : new NgramWriter(new FileOutputStream(ngramPart(rightFile, part))),
+						null == leftFile ? null : new NgramWriter(new FileOutputStream(ngramPart(leftFile, part))),
+						maxLen);
+			}
+		});
+	}
+
+	private File ngramPart(File ngramFile, int part) {
+		return threads > 1 ? new File(ngramFile.getParentFile(), ngramFile.getName() + "." + part) : ngramFile;
+	}
+
+	private List<File> ngramParts(File ngramFile, int parts) {
+		List<File> files = Lists.newArrayList();
+		for (int i = 0; i < parts; ++i) {
+			files.add(ngramPart(ngramFile, i));
+		}
+		return files;
+	}
+
 	public String genLeft(String rawTextFile, int maxLen, int memSize) {
 
 		File rawFile = new File(rawTextFile);
@@ -134,118 +402,18 @@ public class FastBuilder {
 		File dir = rawFile.getParentFile();
 
 		File ngramFile = new File(dir, "ngram_left.data");
-		File ngramSort = new File(dir, "sort_ngram_left.data");
-		File ngramfreq = new File(dir, "freq_ngram_left.data");
-		File ngramFreqSort = new File(dir, "freq_ngram_left_sort.data");
-
-		try (BufferedReader breader = Files.newReader(rawFile, Charsets.UTF_8);
-				BufferedWriter writer = Files.newWriter(ngramFile,
-						Charsets.UTF_8);
-				BufferedWriter freqWriter = Files.newWriter(ngramfreq,
-						Charsets.UTF_8);) {
-			String line = null;
-			while (null != (line = breader.readLine())) {
-				line = line.replaceAll("[" + stopwords + "]", " ")
-						.replaceAll("\\p{Punct}", " ")
-						.replaceAll("\\pP", " ")
-						.replaceAll("　", " ")
-						.replaceAll("\\p{Blank}", " ")
-						.replaceAll("\\p{Space}", " ")
-						.replaceAll("\\p{Cntrl}", " ");
-				for (String sen : Splitter.on(" ").omitEmptyStrings()
-						.splitToList(line)) {
-					sen = reverse(sen.trim());
-					if (!allChs(sen)) continue;
-					sen = "$" + sen + "$";
-					for (int i = 1; i < sen.length() - 1; ++i) {
-						writer.write(sen.substring(i, Math.min(maxLen + i,  sen.length())) + "\n");
-					}
-				}
-			}
-			writer.close();
-			sortFile(ngramFile, ngramSort);
-
-			try(BufferedReader nsr = Files.newReader(ngramSort, Charsets.UTF_8)) {
-				String first = null;
-				String curr = null;
-				Map<String, CounterMap> stat = Maps.newHashMap();
-				while (null != (curr = nsr.readLine())) {
-					if (null == first) {
-						for (int i = 1; i < curr.length(); ++i) {
-							String w = curr.substring(0, i);
-							String suffix = curr.substring(i).substring(0, 1);
-							if (stat.containsKey(w)) {
-								stat.get(w).incr(suffix);
-							} else {
-								CounterMap cm = new CounterMap();
-								cm.incr(suffix);
-								stat.put(w, cm);
-							}
-						}
-						first = curr.substring(0, 1);
-					} else {
-						if (!curr.startsWith(first)) {
-
-							StringBuilder builder = new StringBuilder();
-							for (String w : stat.keySet()) {
-								CounterMap cm = stat.get(w);
-								int freq = 0;
-								double re = 0;
-								for (String k : cm.countAll().keySet()) {
-									freq += cm.get(k);
-								}
-								for (String k : cm.countAll().keySet()) {
-									double p = cm.get(k) * 1.0 / freq;
-									re += -1 * Math.log(p) / Math.log(2) * p;
-								}
-								builder.append(reverse(w)).append("\t").append(re).append("\n");
-							}
-							freqWriter.write(builder.toString());
-							stat.clear();
-							first = curr.substring(0, 1);
-						}
-						for (int i = 1; i < curr.length(); ++i) {
-							String w = curr.substring(0, i);
-							String suffix = curr.substring(i).substring(0, 1);
-							if (stat.containsKey(w)) {
-								stat.get(w).incr(suffix);
-							} else {
-								CounterMap cm = new CounterMap();
-								cm.incr(suffix);
-								stat.put(w, cm);
-							}
-						}
-					}
-				}
-				StringBuilder builder = new StringBuilder();
-							for (String w : stat.keySet()) {
-								CounterMap cm = stat.get(w);
-								int freq = 0;
-								double re = 0;
-								for (String k : cm.countAll().keySet()) {
-									freq += cm.get(k);
-								}
-								for (String k : cm.countAll().keySet()) {
-									double p = cm.get(k) * 1.0 / freq;
-									re += -1 * Math.log(p) / Math.log(2) * p;
-								}
-								builder.append(reverse(w)).append("\t").append(re).append("\n");
-							}
-							freqWriter.write(builder.toString());
-							stat.clear();
-				
-				freqWriter.close();
-			}
-			
-			sortFile(ngramfreq, ngramFreqSort);
 
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+		try {
+			if (countMode == CountMode.MEMORY) {
+				countInMemory(rawFile, maxLen, memSize, false, true);
+				return recordFile(dir, "freq_ngram_left_sort").getAbsolutePath();
+			}
+			int parts = writeNgrams(rawFile, null, ngramFile, maxLen);
+			return countSorted(ngramParts(ngramFile, parts), true).getAbsolutePath();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-
-		return ngramFreqSort.getAbsolutePath();
+		return recordFile(dir, "freq_ngram_left_sort").getAbsolutePath();
 	}
 
 	public String genFreqRight(String rawTextFile, int maxLen, int memSize) {
@@ -255,190 +423,413 @@ public class FastBuilder {
 		File dir = rawFile.getParentFile();
 
 		File ngramFile = new File(dir, "ngram.data");
-		File ngramSort = new File(dir, "ngram_sort.data");
-		File ngramfreq = new File(dir, "freq_ngram.data");
-		File ngramfreqSort = new File(dir, "freq_ngram_sort.data");
-
-		try (BufferedReader breader = Files.newReader(rawFile, Charsets.UTF_8);
-				BufferedWriter writer = Files.newWriter(ngramFile,
-						Charsets.UTF_8);
-				BufferedWriter freqWriter = Files.newWriter(ngramfreq,
-						Charsets.UTF_8);) {
-			String line = null;
-			while (null != (line = breader.readLine())) {
-				line = line.replaceAll("["+stopwords+"]", " ")
-						.replaceAll("\\p{Punct}", " ")
-						.replaceAll("\\pP", " ")
-						.replaceAll("　", " ")
-						.replaceAll("\\p{Blank}", " ")
-						.replaceAll("\\p{Space}", " ")
-						.replaceAll("\\p{Cntrl}", " ");
-				for (String sen : Splitter.on(" ").omitEmptyStrings()
-						.splitToList(line)) {
-					sen = sen.trim();
-					if (!allChs(sen)) continue;
-					sen = "$" + sen + "$";
-					for (int i = 1; i < sen.length() - 1; ++i) {
-						writer.write(sen.substring(i, Math.min(maxLen + i,  sen.length())) + "\n");
-					}
-				}
+
+		try {
+			if (countMode == CountMode.MEMORY) {
+				countInMemory(rawFile, maxLen, memSize, true, false);
+				return recordFile(dir, "freq_ngram_sort").getAbsolutePath();
 			}
-			writer.close();
+			int parts = writeNgrams(rawFile, ngramFile, null, maxLen);
 			System.out.println("gen sorting...");
-			sortFile(ngramFile, ngramSort);
-			
-			try(BufferedReader nsr = Files.newReader(ngramSort, Charsets.UTF_8)) {
-				String first = null;
-				String curr = null;
-				Map<String, CounterMap> stat = Maps.newHashMap();
-				while (null != (curr = nsr.readLine())) {
-					if (null == first) {
-						for (int i = 1; i < curr.length(); ++i) {
-							String w = curr.substring(0, i);
-							String suffix = curr.substring(i).substring(0, 1);
-							if (stat.containsKey(w)) {
-								stat.get(w).incr(suffix);
-							} else {
-								CounterMap cm = new CounterMap();
-								cm.incr(suffix);
-								stat.put(w, cm);
-							}
-						}
-						first = curr.substring(0, 1);
-					} else {
-						if (!curr.startsWith(first)) {
-
-							StringBuilder builder = new StringBuilder();
-							for (String w : stat.keySet()) {
-								CounterMap cm = stat.get(w);
-								int freq = 0;
-								double re = 0;
-								for (String k : cm.countAll().keySet()) {
-									freq += cm.get(k);
-								}
-								for (String k : cm.countAll().keySet()) {
-									double p = cm.get(k) * 1.0 / freq;
-									re += -1 * Math.log(p) / Math.log(2) * p;
-								}
-								builder.append(w).append("\t").append(freq).append("\t").append(re).append("\n");
-							}
-							freqWriter.write(builder.toString());
-							stat.clear();
-							first = curr.substring(0, 1);
-						}
-						for (int i = 1; i < curr.length(); ++i) {
-							String w = curr.substring(0, i);
-							String suffix = curr.substring(i).substring(0, 1);
-							if (stat.containsKey(w)) {
-								stat.get(w).incr(suffix);
-							} else {
-								CounterMap cm = new CounterMap();
-								cm.incr(suffix);
-								stat.put(w, cm);
-							}
-						}
-					}
-				}
-				StringBuilder builder = new StringBuilder();
-							for (String w : stat.keySet()) {
-								CounterMap cm = stat.get(w);
-								int freq = 0;
-								double re = 0;
-								for (String k : cm.countAll().keySet()) {
-									freq += cm.get(k);
-								}
-								for (String k : cm.countAll().keySet()) {
-									double p = cm.get(k) * 1.0 / freq;
-									re += -1 * Math.log(p) / Math.log(2) * p;
-								}
-								builder.append(w).append("\t").append(freq).append("\t").append(re).append("\n");
-							}
-							freqWriter.write(builder.toString());
-							stat.clear();
-				freqWriter.close();
-			}
-			
-			sortFile(ngramfreq, ngramfreqSort);
-
-		} catch (FileNotFoundException e) {
+			return countSorted(ngramParts(ngramFile, parts), false).getAbsolutePath();
+		} catch (IOException e) {
 			e.printStackTrace();
+		}
+		return recordFile(dir, "freq_ngram_sort").getAbsolutePath();
+	}
+
+	/**
+	 * Runs {@link #genFreqRight}, {@link #genLeft} and {@link #mergeEntropy}
+	 * as one pipeline: the raw file is read once for both directions, and the
+	 * sorted right and left entropies are joined directly instead of being
+	 * concatenated and sorted again.
+	 *
+	 * @return path of <code>merge_entropy.data</code>; the frequency file
+	 *   needed by {@link #extractWords} is <code>freq_ngram_sort.data</code>
+	 *   next to it (<code>.bin</code> files in {@link RecordFormat#BINARY}
+	 *   format)
+	 */
+	public String genEntropy(String rawTextFile, int maxLen, int memSize) {
+
+		File rawFile = new File(rawTextFile);
+
+		File dir = rawFile.getParentFile();
+
+		File freqRight = recordFile(dir, "freq_ngram_sort");
+		File freqLeft = recordFile(dir, "freq_ngram_left_sort");
+		File mergeFile = recordFile(dir, "merge_entropy");
+
+		try {
+			if (countMode == CountMode.MEMORY) {
+				countInMemory(rawFile, maxLen, memSize, true, true);
+			} else {
+				File ngramFile = new File(dir, "ngram.data");
+				File ngramLeftFile = new File(dir, "ngram_left.data");
+				int parts = writeNgrams(rawFile, ngramFile, ngramLeftFile, maxLen);
+				countSorted(ngramParts(ngramFile, parts), false);
+				countSorted(ngramParts(ngramLeftFile, parts), true);
+			}
+			joinEntropy(freqRight, freqLeft, mergeFile);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 
-		return ngramfreqSort.getAbsolutePath();
+		return mergeFile.getAbsolutePath();
 	}
 
-	public String mergeEntropy(String freqRight, String left) {
+	/**
+	 * Sorts the n-gram files and computes frequency and entropy of every
+	 * prefix from the sorted n-grams. N-grams are counted with an
+	 * {@link NgramCounter} that is written and cleared whenever the first
+	 * char changes, since no prefix spans two such blocks; blocks come out
+	 * sorted, so right frequencies need no further sort. In
+	 * {@link CountMode#STREAM} mode a {@link SortedNgramCounter} is used
+	 * instead.
+	 *
+	 * @param left whether the n-grams are reversed; left entropies are
+	 *   written without frequency
+	 * @return the sorted frequency file
+	 */
+	private File countSorted(List<File> ngramParts, boolean left) throws IOException {
 
+		File dir = ngramParts.get(0).getParentFile();
 
-		File frFile = new File(freqRight);
-		File lFile = new File(left);
-		File mergeTmp = new File(frFile.getParentFile(), "merge.tmp");
-		File mergeTmp2 = new File(frFile.getParentFile(), "merge.tmp2");
-		File mergeFile = new File(frFile.getParentFile(), "merge_entropy.data");
+		File ngramSort = new File(dir, left ? "sort_ngram_left.data" : "ngram_sort.data");
+		boolean stream = countMode == CountMode.STREAM;
+		File ngramfreq = left || stream ? recordFile(dir, left ? "freq_ngram_left" : "freq_ngram") : null;
+		File ngramfreqSort = recordFile(dir, left ? "freq_ngram_left_sort" : "freq_ngram_sort");
 
-		try (BufferedReader rr = Files.newReader(frFile, Charsets.UTF_8);
-				BufferedReader lr = Files.newReader(lFile, Charsets.UTF_8);
-				BufferedWriter mw = Files.newWriter(mergeTmp, Charsets.UTF_8);
-				BufferedWriter mf = Files.newWriter(mergeFile, Charsets.UTF_8);) {
-			String line = null;
-			while (null != (line = rr.readLine())) {
-				mw.write(line + "\n");
+		// duplicates become one line with a count as early as the first run
+		sortFile(ngramParts, ngramSort, new LineCountCombiner());
+		if (threads > 1) {
+			for (File part : ngramParts) {
+				part.delete();
 			}
-			line = null;
-			while (null != (line = lr.readLine())) {
-				mw.write(line + "\n");
+		}
+
+		DataWriter<NgramRecord> freqWriter = recordWriter(null != ngramfreq ? ngramfreq : ngramfreqSort);
+		MappedLineReader nsr = new MappedLineReader(ngramSort);
+		try {
+			if (stream) {
+				countStreaming(nsr, freqWriter, left);
+			} else {
+				countBlocks(nsr, freqWriter, left);
 			}
-			mw.close();
+		} finally {
+			nsr.close();
+			freqWriter.close();
+		}
 
-			sortFile(mergeTmp, mergeTmp2);
+		if (null != ngramfreq) {
+			sortRecords(ngramfreq, ngramfreqSort);
+		}
+		return ngramfreqSort;
+	}
 
-			BufferedReader br = Files.newReader(mergeTmp2, Charsets.UTF_8);
+	private static void countBlocks(MappedLineReader ngrams, DataWriter<NgramRecord> freqWriter, boolean left)
+			throws IOException {
+		// left n-grams are reversed on disk already, the counter only
+		// needs to reverse words back when writing them
+		NgramCounter counter = new NgramCounter(Long.MAX_VALUE, left);
+		char[] buf = new char[64];
+		char first = 0;
+		ByteBuffer line = null;
+		while (null != (line = ngrams.readSlice())) {
+			if (buf.length < line.remaining()) {
+				buf = new char[line.remaining()];
+			}
+			int len = decode(line, buf);
+			if (len == 0) continue;
+			if (!counter.isEmpty() && buf[0] != first) {
+				counter.writeFreq(freqWriter);
+				counter.clear();
+			}
+			int n = ngramLength(buf, len);
+			counter.ngram(buf, 0, n, ngramCount(buf, n, len));
+			first = buf[0];
+		}
+		counter.writeFreq(freqWriter);
+	}
 
-			String line1 = null;
-			String line2 = null;
-			line1 = br.readLine();
-			line2 = br.readLine();
-			while (true) {
+	private static void countStreaming(MappedLineReader ngrams, DataWriter<NgramRecord> freqWriter,
+			boolean left) throws IOException {
+		SortedNgramCounter counter = new SortedNgramCounter(freqWriter, left);
+		char[] buf = new char[64];
+		ByteBuffer line = null;
+		while (null != (line = ngrams.readSlice())) {
+			if (buf.length < line.remaining()) {
+				buf = new char[line.remaining()];
+			}
+			int len = decode(line, buf);
+			int n = ngramLength(buf, len);
+			counter.ngram(buf, 0, n, ngramCount(buf, n, len));
+		}
+		counter.flush();
+	}
 
-				if (null == line1 || null == line2)
-					break;
-				String[] seg1 = line1.split("\t");
-				String[] seg2 = line2.split("\t");
-				if (!seg1[0].equals(seg2[0])) {
-					line1 = new String(line2.getBytes());
-					line2 = br.readLine();
-					continue;
+	/**
+	 * Length of the n-gram in a line of a sorted n-gram file, where it may
+	 * be followed by a tab and its count (see {@link LineCountCombiner}).
+	 */
+	static int ngramLength(char[] buf, int len) {
+		for (int i = len - 1; i >= 0; --i) {
+			char c = buf[i];
+			if (c == '\t') return i;
+			if (c < '0' || c > '9') break;
+		}
+		return len;
+	}
+
+	/**
+	 * Count of the n-gram ending at <code>n</code>, see {@link #ngramLength}.
+	 */
+	static int ngramCount(char[] buf, int n, int len) {
+		if (n == len) return 1;
+		int count = 0;
+		for (int i = n + 1; i < len; ++i) {
+			count = count * 10 + (buf[i] - '0');
+		}
+		return count;
+	}
+
+	/**
+	 * Decodes a UTF-8 line into <code>buf</code>, which must have room for
+	 * as many chars as the line has bytes.
+	 *
+	 * @return number of chars decoded
+	 */
+	static int decode(ByteBuffer line, char[] buf) {
+		int n = 0;
+		for (int i = line.position(), end = line.limit(); i < end; ) {
+			int b = line.get(i);
+			if (b >= 0) {
+				buf[n++] = (char) b;
+				++i;
+			} else if ((b & 0xF0) == 0xE0 && i + 2 < end && (line.get(i + 1) & 0xC0) == 0x80
+					&& (line.get(i + 2) & 0xC0) == 0x80) {
+				buf[n++] = (char) (((b & 0x0F) << 12) | ((line.get(i + 1) & 0x3F) << 6) | (line.get(i + 2) & 0x3F));
+				i += 3;
+			} else if ((b & 0xE0) == 0xC0 && i + 1 < end && (line.get(i + 1) & 0xC0) == 0x80) {
+				buf[n++] = (char) (((b & 0x1F) << 6) | (line.get(i + 1) & 0x3F));
+				i += 2;
+			} else {
+				// anything unusual: leave it to the JDK decoder
+				byte[] bytes = new byte[line.remaining()];
+				line.duplicate().get(bytes);
+				String s = new String(bytes, Charsets.UTF_8);
+				s.getChars(0, s.length(), buf, 0);
+				return s.length();
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Same output as {@link #countSorted} in {@link CountMode#SORT} mode, but
+	 * counts n-grams with {@link NgramCounter}s instead of writing and sorting
+	 * n-gram files. Right frequencies come out sorted; left ones still need a
+	 * sort by word, since the counter holds reversed words.
+	 * 
+	 * @param memSize memory budget of the counters in megabytes, capped at
+	 *   half of the heap
+	 */
+	private void countInMemory(File rawFile, final int maxLen, int memSize,
+			final boolean right, final boolean left) throws IOException {
+
+		final File dir = rawFile.getParentFile();
+
+		File freqRight = recordFile(dir, "freq_ngram_sort");
+		File freqLeft = recordFile(dir, "freq_ngram_left");
+		File freqLeftSort = recordFile(dir, "freq_ngram_left_sort");
+
+		final long maxMem = Math.min(memSize * 1024L * 1024L, Runtime.getRuntime().maxMemory() >> 1)
+				/ Math.max(1, threads) / (right && left ? 2 : 1);
+		// counters kept by a single thread that never had to spill
+		final NgramCounter[] counters = new NgramCounter[2];
+		final List<File> rightRuns = Collections.synchronizedList(Lists.<File>newArrayList());
+		final List<File> leftRuns = Collections.synchronizedList(Lists.<File>newArrayList());
+
+		try {
+			CorpusScanner.scan(rawFile, threads, new CorpusScanner.LineHandlerFactory() {
+				@Override
+				public CorpusScanner.LineHandler create(final int part) {
+					final NgramCounter rightCounter = right ? new NgramCounter(maxMem, false) : null;
+					final NgramCounter leftCounter = left ? new NgramCounter(maxMem, true) : null;
+					return new SentenceHandler(rightCounter, leftCounter, maxLen) {
+						int spills = 0;
+
+						@Override
+						public void line(String line) throws IOException {
+							super.line(line);
+							if ((right && rightCounter.isFull()) || (left && leftCounter.isFull())) {
+								spill(false);
+							}
+						}
+
+						@Override
+						public void close() throws IOException {
+							if (threads <= 1 && rightRuns.isEmpty() && leftRuns.isEmpty()) {
+								// everything fit in memory: write the counters directly
+								counters[0] = rightCounter;
+								counters[1] = leftCounter;
+							} else {
+								spill(true);
+							}
+						}
+
+						private void spill(boolean last) throws IOException {
+							String name = part + "_" + spills++;
+							if (right && !(last && rightCounter.isEmpty())) {
+								rightRuns.add(FastBuilder.this.spill(rightCounter, dir, "ngram_count_" + name));
+							}
+							if (left && !(last && leftCounter.isEmpty())) {
+								leftRuns.add(FastBuilder.this.spill(leftCounter, dir, "ngram_left_count_" + name));
+							}
+						}
+					};
+				}
+			});
+
+			if (right) {
+				DataWriter<NgramRecord> freqWriter = recordWriter(freqRight);
+				try {
+					writeCounted(counters[0], rightRuns, freqWriter, false);
+				} finally {
+					freqWriter.close();
 				}
-				if (seg1.length < 2) {
-					line1 = new String(line2.getBytes());
-					line2 = br.readLine();
-					continue;
+				counters[0] = null;
+			}
+			if (left) {
+				DataWriter<NgramRecord> freqWriter = recordWriter(freqLeft);
+				try {
+					writeCounted(counters[1], leftRuns, freqWriter, true);
+				} finally {
+					freqWriter.close();
+				}
+				counters[1] = null;
+				sortRecords(freqLeft, freqLeftSort);
+			}
+		} finally {
+			for (File run : rightRuns) {
+				run.delete();
+			}
+			for (File run : leftRuns) {
+				run.delete();
+			}
+		}
+	}
+
+	private static void writeCounted(NgramCounter counter, List<File> runs, DataWriter<NgramRecord> freqWriter,
+			boolean left)
+			throws IOException {
+		if (null != counter) {
+			counter.writeFreq(freqWriter);
+		} else {
+			LOG.info("merging " + runs.size() + " n-gram count runs");
+			NgramCounter.mergeCounts(runs, freqWriter, left);
+		}
+	}
+
+	private File spill(NgramCounter counter, File dir, String name) throws IOException {
+		File run = new File(dir, name + ".tmp");
+		LOG.info("n-gram counter full, spilling to " + run);
+		try (BufferedWriter writer = Files.newWriter(run, Charsets.UTF_8)) {
+			counter.writeCounts(writer);
+		}
+		counter.clear();
+		return run;
+	}
+
+	/**
+	 * Joins right frequencies/entropies and left entropies, both sorted by
+	 * word, into records of word, frequency and <code>min(le, re)</code>, the
+	 * output of {@link #mergeEntropy}. Fails if either file is not sorted.
+	 */
+	private void joinEntropy(File freqRight, File freqLeft, File mergeFile) throws IOException {
+		DataReader<NgramRecord> rr = recordReader(freqRight);
+		DataReader<NgramRecord> lr = null;
+		DataWriter<NgramRecord> mf = null;
+		try {
+			lr = recordReader(freqLeft);
+			mf = recordWriter(mergeFile);
+			NgramRecord r = nextSorted(rr, null, freqRight);
+			NgramRecord l = nextSorted(lr, null, freqLeft);
+			while (null != r && null != l) {
+				int cmp = compareWords(r.getWord(), l.getWord());
+				if (cmp < 0) {
+					r = nextSorted(rr, r, freqRight);
+				} else if (cmp > 0) {
+					l = nextSorted(lr, l, freqLeft);
+				} else {
+					if (r.hasFreq() && !l.hasFreq()) {
+						double e = Math.min(l.getEntropy(), r.getEntropy());
+						mf.writeEntry(new NgramRecord(r.getWord(), r.getFreq(), e));
+					}
+					r = nextSorted(rr, r, freqRight);
+					l = nextSorted(lr, l, freqLeft);
 				}
-				line1 = br.readLine();
-				line2 = br.readLine();
-				
-				if (seg1.length < 3 && seg2.length < 3) 
-					continue;
-				double le = seg1.length == 2 ? Double.parseDouble(seg1[1])
-						: Double.parseDouble(seg2[1]);
-				double re = seg1.length == 3 ? Double.parseDouble(seg1[2])
-						: Double.parseDouble(seg2[2]);
-				int freq = seg1.length == 3 ? Integer.parseInt(seg1[1])
-						: Integer.parseInt(seg2[1]);
-				double e = Math.min(le, re);
-				mf.write(seg1[0] + "\t" + freq + "\t" + e + "\n");
+			}
+		} finally {
+			rr.close();
+			if (null != lr) lr.close();
+			if (null != mf) mf.close();
+		}
+	}
+
+	/**
+	 * Reads the record after <code>previous</code>, checking that words are
+	 * strictly ascending.
+	 */
+	private static NgramRecord nextSorted(DataReader<NgramRecord> reader, NgramRecord previous, File file)
+			throws IOException {
+		NgramRecord next = reader.readNext();
+		if (null != next && null != previous && compareWords(previous.getWord(), next.getWord()) >= 0) {
+			throw new IOException(file + " not sorted by word: " + next.getWord() + " after "
+					+ previous.getWord());
+		}
+		return next;
+	}
 
+	/**
+	 * Compares words in code point order, which is the order of their UTF-8
+	 * bytes, used by the sorts; <code>String.compareTo</code> puts
+	 * supplementary characters before <code>U+E000..U+FFFF</code>.
+	 */
+	static int compareWords(String a, String b) {
+		int len = Math.min(a.length(), b.length());
+		for (int i = 0; i < len; ++i) {
+			char c1 = a.charAt(i);
+			char c2 = b.charAt(i);
+			if (c1 != c2) {
+				return codePointOrder(c1) - codePointOrder(c2);
 			}
-			mf.close();
+		}
+		return a.length() - b.length();
+	}
 
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+	/**
+	 * Moves surrogates above the other chars, so that chars compare like the
+	 * code points they belong to.
+	 */
+	static int codePointOrder(char c) {
+		if (c >= 0xD800) {
+			return c >= 0xE000 ? c - 0x800 : c + 0x2000;
+		}
+		return c;
+	}
+
+	/**
+	 * Joins right frequencies/entropies and left entropies into
+	 * <code>merge_entropy</code>; both files must be sorted by word, as
+	 * written by {@link #genFreqRight} and {@link #genLeft}.
+	 */
+	public String mergeEntropy(String freqRight, String left) {
+		File mergeFile = recordFile(new File(freqRight).getParentFile(), "merge_entropy");
+		try {
+			joinEntropy(new File(freqRight), new File(left), mergeFile);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-
 		return mergeFile.toString();
 	}
 	
@@ -452,107 +843,291 @@ public class FastBuilder {
 		return true;
 	}
 
-	public void extractWords(String freqFile, String entropyFile) {
+	/**
+	 * Scores a candidate word by the PMI of its best split, its entropy and
+	 * the position probabilities of its first and last chars.
+	 *
+	 * @return scores, or null if the word is no candidate
+	 */
+	private static ScoredWord score(NgramRecord record, FrequencyIndex index, long total,
+			TreeMap<String, double[]> posProp) {
+		if (!record.hasFreq())
+			return null;
+		String w = record.getWord();
+		if (allLetterOrNumber(w)) {
+			return null;
+		}
+		int f = record.getFreq();
+		double e = record.getEntropy();
+		long max = -1;
+		for (int s = 1; s < w.length(); ++s) {
+			long lf = index.get(w, 0, s);
+			long rf = index.get(w, s, w.length());
+			if (-1 == lf || -1 == rf) continue;
+			
+			long ff = lf * rf;
+			if (ff > max)
+				max = ff;
+		}
+		double pf = f * total / max;
+		double pmi = Math.log(pf) / Math.log(2);
+		if (Double.isNaN(pmi)) return null;
+		double pp = -1;
+		if (null != posProp.get(w.subSequence(0, 1)) && null != posProp.get(w.subSequence(w.length() - 1, w.length())))
+			pp = Math.min(posProp.get(w.subSequence(0, 1))[0], posProp.get(w.subSequence(w.length() - 1, w.length()))[2]);
+		return new ScoredWord(w, f, pmi, e, pp);
+	}
 
-		LOG.info("start to extract words");
-		
+	/**
+	 * Scores all candidates of the entropy file into the sink, on
+	 * {@link #threads} threads if more than one: records are then handed
+	 * over in batches, and results written in the order of the batches, so
+	 * the output is the same as with one thread. At most two batches per
+	 * thread are in flight.
+	 */
+	private void scoreAll(DataReader<NgramRecord> er, WordSink sink, final FrequencyIndex index,
+			final long total, final TreeMap<String, double[]> posProp) throws IOException {
+		if (threads <= 1) {
+			NgramRecord record = null;
+			int cnt = 0;
+			while (null != (record = er.readNext())) {
+				cnt += 1;
+				if (cnt % 1000 == 0) {
+					LOG.info("extract words done: " + cnt);
+				}
+				sink.write(score(record, index, total, posProp));
+			}
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			ArrayDeque<Future<List<ScoredWord>>> pending = new ArrayDeque<Future<List<ScoredWord>>>();
+			List<NgramRecord> batch = Lists.newArrayListWithCapacity(SCORE_BATCH_SIZE);
+			NgramRecord record = null;
+			int cnt = 0;
+			while (true) {
+				record = er.readNext();
+				if (null != record) {
+					cnt += 1;
+					if (cnt % 1000 == 0) {
+						LOG.info("extract words done: " + cnt);
+					}
+					batch.add(record);
+					if (batch.size() < SCORE_BATCH_SIZE) continue;
+				}
+				if (!batch.isEmpty()) {
+					final List<NgramRecord> records = batch;
+					pending.add(executor.submit(new Callable<List<ScoredWord>>() {
+						@Override
+						public List<ScoredWord> call() {
+							List<ScoredWord> words = Lists.newArrayListWithCapacity(records.size());
+							for (NgramRecord r : records) {
+								words.add(score(r, index, total, posProp));
+							}
+							return words;
+						}
+					}));
+					batch = Lists.newArrayListWithCapacity(SCORE_BATCH_SIZE);
+				}
+				while (!pending.isEmpty() && (null == record || pending.size() >= 2 * threads)) {
+					for (ScoredWord word : CorpusScanner.get(pending.poll())) {
+						sink.write(word);
+					}
+				}
+				if (null == record) break;
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Scores the candidates of the entropy file once, writing the words each
+	 * of the thresholds accepts to the matching words file, and all scored
+	 * candidates to <code>scoredFile</code> unless it is null.
+	 *
+	 * @return number of words written for each of the thresholds
+	 */
+	private long[] scoreWords(File ffile, File efile, List<Thresholds> grid, List<File> wordFiles, File scoredFile)
+			throws IOException {
 		TreeMap<String, double[]> posProp = this.loadPosprop();
+		File ifile = new File(ffile.getParentFile(), "freq_index.idx");
+		try (FrequencyIndex index = loadIndex(ffile, ifile);
+				WordSink sink = new WordSink(grid, wordFiles, scoredFile)) {
+			//all single char's frequency
+			long total = index.getCharTotal();
+			DataReader<NgramRecord> er = recordReader(efile);
+			try {
+				scoreAll(er, sink, index, total, posProp);
+			} finally {
+				er.close();
+			}
+			return sink.counts;
+		}
+	}
+
+	private void sortWords(File wfile, File wsfile) {
+		try {
+			final SplitFileSorter sorter = new SplitFileSorter(plan(baseConfig(), wfile.length()));
+			sorter.sort(new FileInputStream(wfile), new PrintStream(wsfile));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Opens the frequency index next to the frequency file, building it only
+	 * if the frequency file changed since it was built.
+	 */
+	private FrequencyIndex loadIndex(File freqFile, File indexFile) throws IOException {
+		long start = System.currentTimeMillis();
+		boolean current = FrequencyIndex.isCurrent(indexFile, freqFile);
+		FrequencyIndex index = FrequencyIndex.load(format.readerFactory(), freqFile, indexFile);
+		LOG.info((current ? "open" : "build") + " freq index done: " + index.size() + " words, "
+				+ index.getCharTotal() + " chars, " + (System.currentTimeMillis() - start) + " ms");
+		return index;
+	}
+
+	/**
+	 * Extracts the words passing the {@link #setThresholds thresholds} into
+	 * <code>words_sort.data</code>.
+	 */
+	public void extractWords(String freqFile, String entropyFile) {
 
-		RadixTree<Integer> tree = new ConcurrentRadixTree<Integer>(new DefaultCharArrayNodeFactory());
+		LOG.info("start to extract words");
 
 		File ffile = new File(freqFile);
 		File efile = new File(entropyFile);
 		File wfile = new File(efile.getParentFile(), "words.data");
 		File wsfile = new File(efile.getParentFile(), "words_sort.data");
 
-		try (BufferedReader fr = Files.newReader(ffile, Charsets.UTF_8);
-				BufferedReader er = Files.newReader(efile, Charsets.UTF_8);
-				BufferedWriter ww = Files.newWriter(wfile, Charsets.UTF_8);) {
+		try {
+			scoreWords(ffile, efile, Collections.singletonList(thresholds), Collections.singletonList(wfile), null);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		LOG.info("start to sort extracted words");
+		sortWords(wfile, wsfile);
+		LOG.info("all done");
+	}
 
-			String line = null;
-			long total = 0;
-			long epoch = 0;
-			while (null != (line = fr.readLine())) {
-				String[] seg = line.split("\t");
-				if (seg.length < 3) continue;
-				tree.put(seg[0], Integer.parseInt(seg[1]));
-				epoch += 1;
-				//all single char's frequency
-				if(seg[0].length()<2) total += Integer.parseInt(seg[1]);
-				if (epoch % 1000 == 0) {
-					LOG.info("load freq to radix tree done: " + total);
+	/**
+	 * Like {@link #extractWords}, but for every thresholds of a grid, scoring
+	 * the candidates only once: writes <code>words_sort_&lt;name&gt;.data</code>
+	 * for each (see {@link Thresholds#name}), and all scored candidates,
+	 * unsorted and unfiltered, to <code>words_scored.data</code> for later
+	 * filtering.
+	 *
+	 * @return the sorted word files, in the order of the grid
+	 */
+	public List<String> sweepWords(String freqFile, String entropyFile, List<Thresholds> grid) {
+
+		LOG.info("start to extract words for " + grid.size() + " thresholds");
+
+		File ffile = new File(freqFile);
+		File efile = new File(entropyFile);
+		File dir = efile.getParentFile();
+		List<File> wordFiles = Lists.newArrayList();
+		for (Thresholds t : grid) {
+			wordFiles.add(new File(dir, "words_" + t.name() + ".data"));
+		}
+
+		List<String> result = Lists.newArrayList();
+		long[] counts;
+		try {
+			counts = scoreWords(ffile, efile, grid, wordFiles, new File(dir, "words_scored.data"));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return result;
+		}
+		for (int i = 0; i < grid.size(); ++i) {
+			File wsfile = new File(dir, "words_sort_" + grid.get(i).name() + ".data");
+			LOG.info(grid.get(i) + ": " + counts[i] + " words, sorting to " + wsfile.getName());
+			sortWords(wordFiles.get(i), wsfile);
+			result.add(wsfile.getAbsolutePath());
+		}
+		LOG.info("all done");
+		return result;
+	}
+
+	/**
+	 * Candidate word with its scores.
+	 */
+	private static final class ScoredWord {
+
+		final String word;
+		final int freq;
+		final double pmi;
+		final double entropy;
+		final double posProb;
+
+		ScoredWord(String word, int freq, double pmi, double entropy, double posProb) {
+			this.word = word;
+			this.freq = freq;
+			this.pmi = pmi;
+			this.entropy = entropy;
+			this.posProb = posProb;
+		}
+
+		/**
+		 * @return line for the words files
+		 */
+		String line() {
+			return word + "\t" + freq + "\t" + pmi + "\t" + entropy + "\t"  + posProb + "\n";
+		}
+	}
+
+	/**
+	 * Writes scored words to the words file of every thresholds accepting
+	 * them, and optionally to a file of all scored words.
+	 */
+	private static final class WordSink implements Closeable {
+
+		private final List<Thresholds> grid;
+		private final Writer[] writers;
+		private final Writer scoredWriter;
+		final long[] counts;
+
+		WordSink(List<Thresholds> grid, List<File> wordFiles, File scoredFile) throws IOException {
+			this.grid = grid;
+			this.writers = new Writer[grid.size()];
+			this.counts = new long[grid.size()];
+			try {
+				for (int i = 0; i < writers.length; ++i) {
+					writers[i] = Files.newWriter(wordFiles.get(i), Charsets.UTF_8);
 				}
+				this.scoredWriter = null == scoredFile ? null : Files.newWriter(scoredFile, Charsets.UTF_8);
+			} catch (IOException e) {
+				close();
+				throw e;
 			}
-			LOG.info("build freq TST done!");
-			line = null;
-			int cnt = 0;
-			while (null != (line = er.readLine())) {
-				cnt += 1;
-				if (cnt % 1000 == 0) {
-					LOG.info("extract words done: " + cnt);
-				}
-				String[] seg = line.split("\t");
-				if (3 != seg.length)
-					continue;
-				String w = seg[0];
-				if (allLetterOrNumber(w)) {
-					continue;
-				}
-				int f = Integer.parseInt(seg[1]);
-				double e = Double.parseDouble(seg[2]);
-				long max = -1;
-				for (int s = 1; s < w.length(); ++s) {
-					String lw = w.substring(0, s);
-					String rw = w.substring(s);
-					Integer lfObj = tree.getValueForExactKey(lw);
-					Integer rfObj = tree.getValueForExactKey(rw);
-					long lf = -1;
-					long rf = -1;
-					if (null != lfObj) {
-						lf = lfObj.intValue();
-					}
-					if (null != rfObj) {
-						rf = rfObj.intValue();
-					}
-					if (-1 == lf || -1 == rf) continue;
-					
-					long ff = lf * rf;
-					if (ff > max)
-						max = ff;
-				}
-				double pf = f * total / max;
-				double pmi = Math.log(pf) / Math.log(2);
-				if (Double.isNaN(pmi)) continue;
-				double pp = -1;
-				if (null != posProp.get(w.subSequence(0, 1)) && null != posProp.get(w.subSequence(w.length() - 1, w.length())))
-					pp = Math.min(posProp.get(w.subSequence(0, 1))[0], posProp.get(w.subSequence(w.length() - 1, w.length()))[2]);
-				if (pmi < 1 || e < 2 || pp < 0.1)
-					continue;
-				ww.write(w + "\t" + f + "\t" + pmi + "\t" + e + "\t"  + pp + "\n");
+		}
 
+		void write(ScoredWord word) throws IOException {
+			if (null == word) return;
+			String line = null;
+			if (null != scoredWriter) {
+				line = word.line();
+				scoredWriter.write(line);
 			}
-			ww.close();
-			LOG.info("start to sort extracted words");
-			try {
-				long availMem = Runtime.getRuntime().maxMemory() - (2048 * 1024 * 1024);
-				long maxMem = (availMem >> 1);
-				if (maxMem > MAX_HEAP_FOR_PRESORT) {
-					maxMem = MAX_HEAP_FOR_PRESORT;
-				} else if (maxMem < MIN_HEAP_FOR_PRESORT) {
-					maxMem = MIN_HEAP_FOR_PRESORT;
+			for (int i = 0; i < writers.length; ++i) {
+				if (grid.get(i).accepts(word.pmi, word.entropy, word.posProb)) {
+					if (null == line) {
+						line = word.line();
+					}
+					writers[i].write(line);
+					++counts[i];
 				}
-				final SplitFileSorter sorter = new SplitFileSorter(new SortConfig().withMaxMemoryUsage(maxMem));
-				sorter.sort(new FileInputStream(wfile), new PrintStream(wsfile));
-			} catch (IOException e) {
-				e.printStackTrace();
 			}
+		}
 
-			LOG.info("all done");
-			
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
+		@Override
+		public void close() throws IOException {
+			for (Writer writer : writers) {
+				if (null != writer) writer.close();
+			}
+			if (null != scoredWriter) scoredWriter.close();
 		}
 	}
 }
@@ -0,0 +1,329 @@
+package dict.build;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+import com.fasterxml.sort.DataReader;
+import com.fasterxml.sort.DataReaderFactory;
+
+/**
+ * Read-only word frequency index, used for the exact lookups of word halves
+ * when extracting words. It is built from a frequency file sorted by word
+ * into an index file, which is memory-mapped, so it takes no heap beyond a
+ * small directory and no objects per word. The index file records length
+ * and modification time of the frequency file, so that later runs can
+ * {@link #load} it instead of building it again.
+ *<p>
+ * Layout of the index file:
+ * <ul>
+ * <li>header: magic, version, length and modification time of the
+ *   frequency file, number of words, number of chars, total frequency of
+ *   single chars;</li>
+ * <li>directory: for each first char, in code point order, index of its
+ *   first word (plus the word count at the end);</li>
+ * <li>entries: for each word, offset of its chars (<code>long</code>) and
+ *   frequency (<code>int</code>);</li>
+ * <li>chars of all words, UTF-16.</li>
+ * </ul>
+ * A lookup finds the words with the same first char from the directory and
+ * binary searches them.
+ *
+ * @author Jennifer
+ */
+public class FrequencyIndex implements Closeable {
+
+	private final static int MAGIC = 0x46524958; // "FRIX"
+
+	private final static int VERSION = 2;
+
+	private final static int HEADER_BYTES = 48;
+
+	private final static int DIRECTORY_SIZE = 0x10000 + 1;
+
+	private final static int ENTRY_BYTES = 12;
+
+	/**
+	 * Longest word the index accepts; also the overlap of char windows, so
+	 * that every word lies within one window.
+	 */
+	public final static int MAX_WORD_LENGTH = 0x10000;
+
+	/*
+	 * Entries and chars are mapped in windows of this many entries/chars,
+	 * since a mapping can not exceed 2 GB.
+	 */
+	private final static int ENTRY_WINDOW_BITS = 26;
+	private final static int CHAR_WINDOW_BITS = 29;
+
+	private final RandomAccessFile _file;
+
+	private final long _size;
+
+	private final long _charCount;
+
+	private final long _charTotal;
+
+	private final long[] _directory;
+
+	private final ByteBuffer[] _entries;
+
+	private final CharBuffer[] _chars;
+
+	private FrequencyIndex(File file) throws IOException {
+		_file = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = _file.getChannel();
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a frequency index: " + file);
+			}
+			// source length and time, see isCurrent()
+			in.readLong();
+			in.readLong();
+			_size = in.readLong();
+			_charCount = in.readLong();
+			_charTotal = in.readLong();
+			_directory = new long[DIRECTORY_SIZE];
+			for (int i = 0; i < DIRECTORY_SIZE; ++i) {
+				_directory[i] = in.readLong();
+			}
+			long entriesStart = HEADER_BYTES + 8L * DIRECTORY_SIZE;
+			long charsStart = entriesStart + ENTRY_BYTES * _size;
+			if (channel.size() != charsStart + 2 * _charCount) {
+				throw new IOException("Truncated frequency index: " + file);
+			}
+			_entries = new ByteBuffer[(int) ((_size >> ENTRY_WINDOW_BITS) + 1)];
+			for (int i = 0; i < _entries.length; ++i) {
+				long first = (long) i << ENTRY_WINDOW_BITS;
+				long count = Math.min(1L << ENTRY_WINDOW_BITS, _size - first);
+				_entries[i] = channel.map(FileChannel.MapMode.READ_ONLY, entriesStart + ENTRY_BYTES * first,
+						ENTRY_BYTES * count);
+			}
+			_chars = new CharBuffer[(int) ((_charCount >> CHAR_WINDOW_BITS) + 1)];
+			for (int i = 0; i < _chars.length; ++i) {
+				long first = (long) i << CHAR_WINDOW_BITS;
+				long count = Math.min((1L << CHAR_WINDOW_BITS) + MAX_WORD_LENGTH, _charCount - first);
+				_chars[i] = channel.map(FileChannel.MapMode.READ_ONLY, charsStart + 2 * first, 2 * count)
+						.asCharBuffer();
+			}
+		} catch (IOException e) {
+			_file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens the index file if it was built from the frequency file as it is
+	 * now, or else builds it first.
+	 */
+	public static FrequencyIndex load(DataReaderFactory<NgramRecord> factory, File freqFile, File indexFile)
+			throws IOException {
+		if (isCurrent(indexFile, freqFile)) {
+			return open(indexFile);
+		}
+		return build(factory, freqFile, indexFile);
+	}
+
+	/**
+	 * @return whether the index file exists, has the current format and was
+	 *   built from the frequency file with its current length and
+	 *   modification time
+	 */
+	public static boolean isCurrent(File indexFile, File freqFile) {
+		if (!indexFile.isFile() || !freqFile.isFile()) {
+			return false;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 64))) {
+			return in.readInt() == MAGIC && in.readInt() == VERSION && in.readLong() == freqFile.length()
+					&& in.readLong() == freqFile.lastModified();
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Builds an index file from a frequency file, which must be sorted by word
+	 * (records without frequency are skipped), and opens it. The file is
+	 * written under a temporary name and renamed when complete, so that an
+	 * interrupted build never leaves an index that looks usable.
+	 */
+	public static FrequencyIndex build(DataReaderFactory<NgramRecord> factory, File freqFile, File indexFile)
+			throws IOException {
+		long sourceLength = freqFile.length();
+		long sourceModified = freqFile.lastModified();
+		// first pass for the sizes and the directory, so that the second can write in place
+		long size = 0;
+		long charCount = 0;
+		long charTotal = 0;
+		long[] directory = new long[DIRECTORY_SIZE];
+		DataReader<NgramRecord> reader = factory.constructReader(freqFile);
+		try {
+			String previous = null;
+			NgramRecord record;
+			while (null != (record = reader.readNext())) {
+				if (!record.hasFreq()) continue;
+				String word = record.getWord();
+				if (word.isEmpty() || word.length() > MAX_WORD_LENGTH) {
+					throw new IOException("Word length not supported by frequency index: " + word.length());
+				}
+				if (null != previous && FastBuilder.compareWords(previous, word) >= 0) {
+					throw new IOException(freqFile + " not sorted by word: " + word + " after " + previous);
+				}
+				++directory[FastBuilder.codePointOrder(word.charAt(0)) + 1];
+				++size;
+				charCount += word.length();
+				if (word.length() == 1) {
+					charTotal += record.getFreq();
+				}
+				previous = word;
+			}
+		} finally {
+			reader.close();
+		}
+		for (int i = 1; i < DIRECTORY_SIZE; ++i) {
+			directory[i] += directory[i - 1];
+		}
+
+		long charsStart = HEADER_BYTES + 8L * DIRECTORY_SIZE + ENTRY_BYTES * size;
+		// entries and chars are written at the same time, through two handles
+		File tmpFile = new File(indexFile.getPath() + ".tmp");
+		DataOutputStream entries = null;
+		DataOutputStream chars = null;
+		reader = factory.constructReader(freqFile);
+		try {
+			entries = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16));
+			FileChannel charChannel = new RandomAccessFile(tmpFile, "rw").getChannel();
+			chars = new DataOutputStream(new BufferedOutputStream(
+					Channels.newOutputStream(charChannel.position(charsStart)), 1 << 16));
+			entries.writeInt(MAGIC);
+			entries.writeInt(VERSION);
+			entries.writeLong(sourceLength);
+			entries.writeLong(sourceModified);
+			entries.writeLong(size);
+			entries.writeLong(charCount);
+			entries.writeLong(charTotal);
+			for (long start : directory) {
+				entries.writeLong(start);
+			}
+			long offset = 0;
+			NgramRecord record;
+			while (null != (record = reader.readNext())) {
+				if (!record.hasFreq()) continue;
+				String word = record.getWord();
+				entries.writeLong(offset);
+				entries.writeInt(record.getFreq());
+				chars.writeChars(word);
+				offset += word.length();
+			}
+			if (offset != charCount) {
+				throw new IOException(freqFile + " changed while building frequency index");
+			}
+		} finally {
+			reader.close();
+			if (null != entries) entries.close();
+			if (null != chars) chars.close();
+		}
+		if (freqFile.length() != sourceLength || freqFile.lastModified() != sourceModified) {
+			tmpFile.delete();
+			throw new IOException(freqFile + " changed while building frequency index");
+		}
+		indexFile.delete();
+		if (!tmpFile.renameTo(indexFile)) {
+			throw new IOException("Failed to rename " + tmpFile + " to " + indexFile);
+		}
+		return open(indexFile);
+	}
+
+	/**
+	 * Opens an index file written by {@link #build}.
+	 */
+	public static FrequencyIndex open(File indexFile) throws IOException {
+		return new FrequencyIndex(indexFile);
+	}
+
+	/**
+	 * @return frequency of the word, or -1 if it is not in the index
+	 */
+	public int get(CharSequence word) {
+		return get(word, 0, word.length());
+	}
+
+	/**
+	 * @return frequency of the word <code>word[start, end)</code>, or -1 if
+	 *   it is not in the index
+	 */
+	public int get(CharSequence word, int start, int end) {
+		if (start >= end) {
+			return -1;
+		}
+		int bucket = FastBuilder.codePointOrder(word.charAt(start));
+		long lo = _directory[bucket];
+		long hi = _directory[bucket + 1] - 1;
+		while (lo <= hi) {
+			long mid = (lo + hi) >>> 1;
+			int cmp = compare(mid, word, start, end);
+			if (cmp < 0) {
+				lo = mid + 1;
+			} else if (cmp > 0) {
+				hi = mid - 1;
+			} else {
+				return _entries[(int) (mid >>> ENTRY_WINDOW_BITS)]
+						.getInt(ENTRY_BYTES * (int) (mid & ((1 << ENTRY_WINDOW_BITS) - 1)) + 8);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return number of words
+	 */
+	public long size() {
+		return _size;
+	}
+
+	/**
+	 * @return sum of the frequencies of single chars, i.e. length of the
+	 *   corpus in chars
+	 */
+	public long getCharTotal() {
+		return _charTotal;
+	}
+
+	@Override
+	public void close() throws IOException {
+		_file.close();
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private long offset(long entry) {
+		return _entries[(int) (entry >>> ENTRY_WINDOW_BITS)]
+				.getLong(ENTRY_BYTES * (int) (entry & ((1 << ENTRY_WINDOW_BITS) - 1)));
+	}
+
+	/**
+	 * Compares the word of the entry with <code>word[start, end)</code>, in
+	 * code point order.
+	 */
+	private int compare(long entry, CharSequence word, int start, int end) {
+		long from = offset(entry);
+		long to = (entry + 1 < _size) ? offset(entry + 1) : _charCount;
+		CharBuffer chars = _chars[(int) (from >>> CHAR_WINDOW_BITS)];
+		int pos = (int) (from & ((1 << CHAR_WINDOW_BITS) - 1));
+		int length = (int) (to - from);
+		int len = Math.min(length, end - start);
+		for (int i = 0; i < len; ++i) {
+			char c1 = chars.get(pos + i);
+			char c2 = word.charAt(start + i);
+			if (c1 != c2) {
+				return FastBuilder.codePointOrder(c1) - FastBuilder.codePointOrder(c2);
+			}
+		}
+		return length - (end - start);
+	}
+}
@@ -30,7 +30,8 @@ public class LineWriter
     @Override
     public void writeEntry(String item) throws IOException
     {
-    	_out.write(item + "\n");
+    	_out.write(item);
+    	_out.write('\n');
     }
 
     /*
@@ -1,8 +1,20 @@
 /**
- * 
+ *
  */
 package dict.build;
 
+import java.io.File;
+import java.util.List;
+
+import com.fasterxml.sort.std.FrontCodedLineCodec;
+import com.fasterxml.sort.std.LZBlockCodec;
+import com.fasterxml.sort.std.StripedTempFileProvider;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
 /**
  * @author zhangcheng
  *
@@ -14,29 +26,117 @@ public class Main {
 	 */
 	public static void main(String[] args) {
 
-		if (args.length == 0) {
-			System.out.println("rawpath");
+		Options options = new Options();
+		options.addOption("h", "help", false, "print this message");
+		options.addOption("c", "count", true, "n-gram counting mode: sort (default), memory or stream");
+		options.addOption("t", "threads", true, "number of threads scanning the raw file (default 1)");
+		options.addOption("f", "fused", false, "compute left and right entropy in one pass over the raw file");
+		options.addOption("z", "compress", false, "compress temporary sort files");
+		options.addOption("b", "binary", false, "pass frequencies and entropies between stages as binary files");
+		options.addOption("d", "tmpdirs", true, "comma separated directories to spread temporary sort files over");
+		options.addOption("x", "thresholds", true, "minimum pmi,entropy,posprob of extracted words (default 1,2,0.1)");
+		options.addOption("s", "sweep", true,
+				"extract words for every thresholds of a grid like 'pmi=1,2;e=2,3;pp=0.1'");
+		options.addOption("e", "extract-only", false,
+				"only extract words, from the frequency and entropy files of an earlier run");
+
+		CommandLine cmd;
+		try {
+			cmd = new GnuParser().parse(options, args);
+		} catch (ParseException e) {
+			System.out.println(e.getMessage());
+			printUsage(options);
 			return;
 		}
-		
-		String rawpath = null;
-		if (args.length > 0) {
-			rawpath = args[0];
+
+		if (cmd.hasOption("h") || cmd.getArgs().length == 0) {
+			printUsage(options);
+			return;
 		}
-		
+
+		String rawpath = cmd.getArgs()[0];
+
 		String left = null;
 		String right = null;
 		String entropyfile = null;
 
 		FastBuilder builder = new FastBuilder();
+		if (cmd.hasOption("c")) {
+			String mode = cmd.getOptionValue("c");
+			try {
+				builder.setCountMode(FastBuilder.CountMode.valueOf(mode.toUpperCase()));
+			} catch (IllegalArgumentException e) {
+				System.out.println("Unknown counting mode: " + mode);
+				printUsage(options);
+				return;
+			}
+		}
+		if (cmd.hasOption("t")) {
+			try {
+				builder.setThreads(Integer.parseInt(cmd.getOptionValue("t")));
+			} catch (IllegalArgumentException e) {
+				// also catches NumberFormatException
+				System.out.println("Invalid thread count: " + e.getMessage());
+				printUsage(options);
+				return;
+			}
+		}
+		if (cmd.hasOption("b")) {
+			builder.setFormat(RecordFormat.BINARY);
+		}
+		if (cmd.hasOption("z")) {
+			builder.setRunFileCodec(new FrontCodedLineCodec(new LZBlockCodec()));
+		}
+		if (cmd.hasOption("d")) {
+			try {
+				builder.setTempFileProvider(StripedTempFileProvider.forPaths(cmd.getOptionValue("d")));
+			} catch (IllegalArgumentException e) {
+				System.out.println("Invalid temp dirs: " + e.getMessage());
+				printUsage(options);
+				return;
+			}
+		}
+		List<Thresholds> grid = null;
+		try {
+			if (cmd.hasOption("x")) {
+				builder.setThresholds(Thresholds.parse(cmd.getOptionValue("x")));
+			}
+			if (cmd.hasOption("s")) {
+				grid = Thresholds.parseGrid(cmd.getOptionValue("s"));
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.println("Invalid thresholds: " + e.getMessage());
+			printUsage(options);
+			return;
+		}
+
+		if (cmd.hasOption("e")) {
+			File dir = new File(rawpath).getAbsoluteFile().getParentFile();
+			right = new File(dir, builder.getFormat().fileName("freq_ngram_sort")).getAbsolutePath();
+			entropyfile = new File(dir, builder.getFormat().fileName("merge_entropy")).getAbsolutePath();
+		}
+
+		if (null == entropyfile && cmd.hasOption("f")) {
+			entropyfile = builder.genEntropy(rawpath, 6, 10 * 1024);
+			right = new File(new File(entropyfile).getParentFile(),
+					builder.getFormat().fileName("freq_ngram_sort")).getAbsolutePath();
+		}
 
 		if (null == right)
 			right = builder.genFreqRight(rawpath, 6, 10 * 1024);
-		if (null == left)
+		if (null == left && null == entropyfile)
 			left = builder.genLeft(rawpath, 6, 10 * 1024);
 		if (null == entropyfile)
 			entropyfile = builder.mergeEntropy(right, left);
 
-		builder.extractWords(right, entropyfile);
+		if (null != grid) {
+			builder.sweepWords(right, entropyfile, grid);
+		} else {
+			builder.extractWords(right, entropyfile);
+		}
+	}
+
+	private static void printUsage(Options options) {
+		new HelpFormatter().printHelp("dict_build [options] rawpath", options);
 	}
 }
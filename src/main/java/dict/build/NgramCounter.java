@@ -0,0 +1,402 @@
+package dict.build;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.sort.DataReader;
+import com.fasterxml.sort.DataWriter;
+import com.fasterxml.sort.Merger;
+import com.fasterxml.sort.std.ByteArrayComparator;
+import com.fasterxml.sort.std.RawTextLineReader;
+import com.google.common.base.Charsets;
+
+/**
+ * In-memory n-gram counter, used instead of writing every n-gram to disk and
+ * sorting it. N-grams are kept as a trie whose edges live in an open addressed
+ * <code>long -&gt; int</code> table keyed by <code>(parent node, char)</code>,
+ * so a node costs a few primitive slots and no objects.
+ *<p>
+ * The children of a node are the right neighbours of the n-gram it stands
+ * for, which is all that is needed for frequency and right entropy. When the
+ * tables outgrow the memory budget, the caller spills the counts to a sorted
+ * run file with {@link #writeCounts} and {@link #clear}s the counter; runs are
+ * combined with {@link #mergeCounts}. The budget covers the arrays for
+ * dumping and, since the caller only checks it between lines, the peak of
+ * growing the tables: growth that would not fit is put off, letting the
+ * table fill further, and the counter reports itself full instead.
+ *<p>
+ * A counter for left entropies is fed reversed n-grams; its words are written
+ * back in reading order, with entropy only.
+ *
+ * @author Jennifer
+ */
+public class NgramCounter extends NgramSink {
+
+	private final static long EMPTY = -1L;
+
+	private final static int INITIAL_CAPACITY = 1 << 16;
+
+	/**
+	 * Bytes needed per node for the sorted edge list built by
+	 * {@link #writeFreq} and {@link #writeCounts}.
+	 */
+	private final static int DUMP_BYTES_PER_NODE = 16;
+
+	/**
+	 * Load factor (in eighths) up to which growth of the table may be put
+	 * off when it would exceed the budget; beyond it the table grows anyway,
+	 * since probing degrades as it fills.
+	 */
+	private final static int MAX_DEFERRED_LOAD = 7;
+
+	private final long _maxMemory;
+
+	private final boolean _reversed;
+
+	/**
+	 * Hash table of edges: key is <code>parent &lt;&lt; 16 | char</code>,
+	 * value the child node id.
+	 */
+	private long[] _keys;
+	private int[] _values;
+	private int _mask;
+
+	/**
+	 * Occurrence count of each node; node 0 is the root.
+	 */
+	private int[] _counts;
+	private int _nodeCount;
+
+	/**
+	 * Whether growth of the tables was put off for lack of budget
+	 */
+	private boolean _growthDeferred;
+
+	/*
+	 * Edge list sorted by key while dumping, with child offsets per node.
+	 */
+	private long[] _sortedKeys;
+	private int[] _sortedChildren;
+	private int[] _childStart;
+	private int[] _scratch;
+
+	/**
+	 * @param reversed whether the counter is fed reversed n-grams (for left
+	 *   entropy)
+	 */
+	public NgramCounter(long maxMemory, boolean reversed) {
+		_maxMemory = maxMemory;
+		_reversed = reversed;
+		clear();
+	}
+
+	/**
+	 * Counts the n-gram and all of its prefixes.
+	 */
+	@Override
+	public void ngram(char[] buf, int start, int end, boolean reversed) {
+		int node = 0;
+		if (reversed) {
+			for (int i = end - 1; i >= start; --i) {
+				node = child(node, buf[i]);
+				++_counts[node];
+			}
+		} else {
+			for (int i = start; i < end; ++i) {
+				node = child(node, buf[i]);
+				++_counts[node];
+			}
+		}
+	}
+
+	/**
+	 * Counts the n-gram <code>buf[start, end)</code> and all of its prefixes
+	 * <code>times</code> times, for n-grams read with a count.
+	 */
+	public void ngram(char[] buf, int start, int end, int times) {
+		int node = 0;
+		for (int i = start; i < end; ++i) {
+			node = child(node, buf[i]);
+			_counts[node] += times;
+		}
+	}
+
+	public boolean isEmpty() {
+		return _nodeCount <= 1;
+	}
+
+	/**
+	 * Whether the counter has reached its memory budget and should be spilled.
+	 */
+	public boolean isFull() {
+		return _growthDeferred || memoryUsage() >= _maxMemory;
+	}
+
+	/**
+	 * Memory taken by the tables, plus what dumping them would need.
+	 */
+	public long memoryUsage() {
+		return 12L * _keys.length + 4L * _counts.length + (long) DUMP_BYTES_PER_NODE * _nodeCount;
+	}
+
+	public void clear() {
+		if (null != _keys && _keys.length == INITIAL_CAPACITY) {
+			// still small: reuse the tables, as when cleared for every block
+			Arrays.fill(_keys, EMPTY);
+			Arrays.fill(_counts, 0, _nodeCount, 0);
+		} else {
+			_keys = new long[INITIAL_CAPACITY];
+			Arrays.fill(_keys, EMPTY);
+			_values = new int[INITIAL_CAPACITY];
+			_mask = INITIAL_CAPACITY - 1;
+			_counts = new int[INITIAL_CAPACITY >> 1];
+		}
+		_nodeCount = 1;
+		_growthDeferred = false;
+	}
+
+	/**
+	 * Writes a record with frequency and entropy for every counted word, in
+	 * the same (byte) order a sort of the text lines would give. Reversed
+	 * counters write entropy only, ordered by reversed word.
+	 */
+	public void writeFreq(DataWriter<NgramRecord> out) throws IOException {
+		_prepareDump();
+		_scratch = new int[256];
+		_writeFreq(out, 0, new char[64], 0);
+		_releaseDump();
+	}
+
+	/**
+	 * Writes <code>word \t neighbour \t count</code> lines, sorted, as a run
+	 * file for {@link #mergeCounts}.
+	 */
+	public void writeCounts(Writer out) throws IOException {
+		_prepareDump();
+		_writeCounts(out, 0, new char[64], 0);
+		_releaseDump();
+	}
+
+	/**
+	 * Merges sorted run files written by {@link #writeCounts} and writes
+	 * the same output {@link #writeFreq} would give for the whole input.
+	 *
+	 * @param reversed whether the runs come from a reversed counter
+	 */
+	public static void mergeCounts(List<File> runs, DataWriter<NgramRecord> out, boolean reversed)
+			throws IOException {
+		List<DataReader<byte[]>> readers = new ArrayList<DataReader<byte[]>>(runs.size());
+		for (File run : runs) {
+			readers.add(new RawTextLineReader(new FileInputStream(run)));
+		}
+		DataReader<byte[]> merged = Merger.mergedReader(new ByteArrayComparator(), readers);
+		try {
+			String word = null;
+			char neighbour = 0;
+			int[] counts = new int[256];
+			int n = 0;
+			int freq = 0;
+			byte[] line;
+			while (null != (line = merged.readNext())) {
+				int t1 = indexOf(line, 0);
+				int t2 = indexOf(line, t1 + 1);
+				String w = new String(line, 0, t1, Charsets.UTF_8);
+				char c = new String(line, t1 + 1, t2 - t1 - 1, Charsets.UTF_8).charAt(0);
+				int count = Integer.parseInt(new String(line, t2 + 1, line.length - t2 - 1, Charsets.US_ASCII));
+				if (!w.equals(word)) {
+					if (null != word) {
+						writeFreq(out, word, freq, FastBuilder.entropy(counts, n, freq), reversed);
+					}
+					word = w;
+					n = 0;
+					freq = 0;
+				} else if (c == neighbour) {
+					// same (word, neighbour) from another run
+					counts[n - 1] += count;
+					freq += count;
+					continue;
+				}
+				if (n == counts.length) {
+					counts = Arrays.copyOf(counts, n << 1);
+				}
+				counts[n++] = count;
+				neighbour = c;
+				freq += count;
+			}
+			if (null != word) {
+				writeFreq(out, word, freq, FastBuilder.entropy(counts, n, freq), reversed);
+			}
+		} finally {
+			merged.close();
+		}
+	}
+
+	/*
+	 * Internal methods
+	 */
+
+	private int child(int parent, char c) {
+		long key = ((long) parent << 16) | c;
+		int slot = hash(key) & _mask;
+		while (true) {
+			long k = _keys[slot];
+			if (k == key) {
+				return _values[slot];
+			}
+			if (k == EMPTY) {
+				break;
+			}
+			slot = (slot + 1) & _mask;
+		}
+		int id = _nodeCount++;
+		if (id == _counts.length) {
+			_counts = Arrays.copyOf(_counts, id + (id >> 1));
+		}
+		_keys[slot] = key;
+		_values[slot] = id;
+		// keep load factor at or below 1/2, unless growing does not fit
+		if ((_nodeCount << 1) > _keys.length) {
+			if (_growthFits() || (long) _nodeCount << 3 > (long) MAX_DEFERRED_LOAD * _keys.length) {
+				_rehash();
+			} else {
+				_growthDeferred = true;
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Whether the tables can double within the budget: old and new tables
+	 * are alive during the rehash, and the counts may grow on the way.
+	 */
+	private boolean _growthFits() {
+		return memoryUsage() + 24L * _keys.length + 6L * _counts.length <= _maxMemory;
+	}
+
+	private void _rehash() {
+		long[] oldKeys = _keys;
+		int[] oldValues = _values;
+		int capacity = oldKeys.length << 1;
+		_keys = new long[capacity];
+		Arrays.fill(_keys, EMPTY);
+		_values = new int[capacity];
+		_mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; ++i) {
+			long key = oldKeys[i];
+			if (key == EMPTY) continue;
+			int slot = hash(key) & _mask;
+			while (_keys[slot] != EMPTY) {
+				slot = (slot + 1) & _mask;
+			}
+			_keys[slot] = key;
+			_values[slot] = oldValues[i];
+		}
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private int lookup(long key) {
+		int slot = hash(key) & _mask;
+		while (_keys[slot] != key) {
+			slot = (slot + 1) & _mask;
+		}
+		return _values[slot];
+	}
+
+	private void _prepareDump() {
+		int edges = _nodeCount - 1;
+		long[] sorted = new long[edges];
+		int n = 0;
+		for (long key : _keys) {
+			if (key != EMPTY) sorted[n++] = key;
+		}
+		Arrays.sort(sorted);
+		int[] children = new int[edges];
+		int[] start = new int[_nodeCount + 1];
+		for (int i = 0; i < edges; ++i) {
+			children[i] = lookup(sorted[i]);
+			++start[(int) (sorted[i] >>> 16) + 1];
+		}
+		for (int i = 0; i < _nodeCount; ++i) {
+			start[i + 1] += start[i];
+		}
+		_sortedKeys = sorted;
+		_sortedChildren = children;
+		_childStart = start;
+	}
+
+	private void _releaseDump() {
+		_sortedKeys = null;
+		_sortedChildren = null;
+		_childStart = null;
+		_scratch = null;
+	}
+
+	private void _writeFreq(DataWriter<NgramRecord> out, int node, char[] path, int depth) throws IOException {
+		int from = _childStart[node];
+		int to = _childStart[node + 1];
+		if (depth > 0 && from < to) {
+			if (_scratch.length < to - from) {
+				_scratch = new int[to - from];
+			}
+			int[] counts = _scratch;
+			int n = 0;
+			int freq = 0;
+			for (int i = from; i < to; ++i) {
+				int count = _counts[_sortedChildren[i]];
+				counts[n++] = count;
+				freq += count;
+			}
+			writeFreq(out, new String(path, 0, depth), freq, FastBuilder.entropy(counts, n, freq), _reversed);
+		}
+		for (int i = from; i < to; ++i) {
+			path[depth] = (char) _sortedKeys[i];
+			_writeFreq(out, _sortedChildren[i], path, depth + 1);
+		}
+	}
+
+	private void _writeCounts(Writer out, int node, char[] path, int depth) throws IOException {
+		int from = _childStart[node];
+		int to = _childStart[node + 1];
+		if (depth > 0) {
+			String w = new String(path, 0, depth);
+			for (int i = from; i < to; ++i) {
+				out.write(w);
+				out.write('\t');
+				out.write((char) _sortedKeys[i]);
+				out.write('\t');
+				out.write(Integer.toString(_counts[_sortedChildren[i]]));
+				out.write('\n');
+			}
+		}
+		for (int i = from; i < to; ++i) {
+			path[depth] = (char) _sortedKeys[i];
+			_writeCounts(out, _sortedChildren[i], path, depth + 1);
+		}
+	}
+
+	private static void writeFreq(DataWriter<NgramRecord> out, String word, int freq, double entropy,
+			boolean reversed) throws IOException {
+		if (reversed) {
+			out.writeEntry(new NgramRecord(new StringBuilder(word).reverse().toString(), NgramRecord.NO_FREQ,
+					entropy));
+		} else {
+			out.writeEntry(new NgramRecord(word, freq, entropy));
+		}
+	}
+
+	private static int indexOf(byte[] line, int from) {
+		for (int i = from; i < line.length; ++i) {
+			if (line[i] == '\t') return i;
+		}
+		return line.length;
+	}
+}
@@ -0,0 +1,48 @@
+package dict.build;
+
+/**
+ * One line of the frequency and entropy files: a word with its frequency
+ * and entropy. Left entropy records carry no frequency.
+ *
+ * @author Jennifer
+ */
+public class NgramRecord {
+
+	/**
+	 * Frequency of records that have none, i.e. left entropies.
+	 */
+	public final static int NO_FREQ = -1;
+
+	private final String word;
+
+	private final int freq;
+
+	private final double entropy;
+
+	public NgramRecord(String word, int freq, double entropy) {
+		this.word = word;
+		this.freq = freq;
+		this.entropy = entropy;
+	}
+
+	public String getWord() {
+		return word;
+	}
+
+	public int getFreq() {
+		return freq;
+	}
+
+	public boolean hasFreq() {
+		return freq != NO_FREQ;
+	}
+
+	public double getEntropy() {
+		return entropy;
+	}
+
+	@Override
+	public String toString() {
+		return hasFreq() ? word + "\t" + freq + "\t" + entropy : word + "\t" + entropy;
+	}
+}
@@ -0,0 +1,44 @@
+package dict.build;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the n-grams of sentences as ranges of a reusable char buffer, so
+ * that emitting an n-gram allocates nothing. Reversed n-grams (for left
+ * entropy) are not copied either: the sink reads their range backwards.
+ *
+ * @author Jennifer
+ */
+public abstract class NgramSink implements Closeable {
+
+	/**
+	 * Called for every n-gram <code>buf[start, end)</code>; if
+	 * <code>reversed</code> the n-gram is <code>buf[end - 1]</code> down to
+	 * <code>buf[start]</code>.
+	 */
+	public abstract void ngram(char[] buf, int start, int end, boolean reversed) throws IOException;
+
+	/**
+	 * Emits the n-grams of a sentence <code>buf[start, end)</code> wrapped in
+	 * <code>$</code>: one per position except the two <code>$</code>, each at
+	 * most <code>maxLen</code> chars and cut at the closing <code>$</code>.
+	 *
+	 * @param reversed whether to emit the n-grams of the reversed sentence
+	 */
+	public final void sentence(char[] buf, int start, int end, int maxLen, boolean reversed) throws IOException {
+		if (reversed) {
+			for (int i = end - 2; i > start; --i) {
+				ngram(buf, Math.max(i + 1 - maxLen, start), i + 1, true);
+			}
+		} else {
+			for (int i = start + 1; i < end - 1; ++i) {
+				ngram(buf, i, Math.min(i + maxLen, end), false);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+	}
+}
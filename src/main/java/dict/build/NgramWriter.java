@@ -0,0 +1,71 @@
+package dict.build;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link NgramSink} that writes n-grams as UTF-8 lines, encoding straight
+ * from the char buffer into its own byte buffer.
+ *<p>
+ * Sentences only hold BMP chars (see {@link Normalizer}), so no surrogate
+ * pairs need to be handled.
+ *
+ * @author Jennifer
+ */
+public class NgramWriter extends NgramSink {
+
+	protected final OutputStream _out;
+
+	protected final byte[] _buffer = new byte[64 * 1024];
+
+	protected int _ptr = 0;
+
+	public NgramWriter(OutputStream out) {
+		_out = out;
+	}
+
+	@Override
+	public void ngram(char[] buf, int start, int end, boolean reversed) throws IOException {
+		// at most 3 bytes per char, plus linefeed
+		if (_ptr + 3 * (end - start) + 1 > _buffer.length) {
+			flush();
+		}
+		if (reversed) {
+			for (int i = end - 1; i >= start; --i) {
+				encode(buf[i]);
+			}
+		} else {
+			for (int i = start; i < end; ++i) {
+				encode(buf[i]);
+			}
+		}
+		_buffer[_ptr++] = '\n';
+	}
+
+	private void encode(char c) {
+		final byte[] b = _buffer;
+		if (c < 0x80) {
+			b[_ptr++] = (byte) c;
+		} else if (c < 0x800) {
+			b[_ptr++] = (byte) (0xC0 | (c >> 6));
+			b[_ptr++] = (byte) (0x80 | (c & 0x3F));
+		} else {
+			b[_ptr++] = (byte) (0xE0 | (c >> 12));
+			b[_ptr++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			b[_ptr++] = (byte) (0x80 | (c & 0x3F));
+		}
+	}
+
+	public void flush() throws IOException {
+		if (_ptr > 0) {
+			_out.write(_buffer, 0, _ptr);
+			_ptr = 0;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		_out.close();
+	}
+}
@@ -0,0 +1,110 @@
+package dict.build;
+
+import java.io.IOException;
+
+/**
+ * Splits raw text into sentences of Chinese characters. It does in one pass
+ * over a <code>char[]</code> what the builder used to do with a chain of
+ * <code>replaceAll</code> calls and a {@link com.google.common.base.Splitter}:
+ * stopwords, punctuation (<code>\p{Punct}</code> and <code>\pP</code>),
+ * blanks, spaces and control characters separate sentences, and sentences
+ * with anything but Chinese characters are dropped.
+ *<p>
+ * Characters are classified with a lookup table built once, so instances are
+ * immutable and can be shared between threads.
+ *
+ * @author Jennifer
+ */
+public class Normalizer {
+
+	public interface SentenceHandler {
+		/**
+		 * Called for every sentence <code>buf[start, end)</code>. The chars
+		 * at <code>start - 1</code> and <code>end</code> are separators or lie
+		 * outside the range being split, so the handler may overwrite them.
+		 */
+		void sentence(char[] buf, int start, int end) throws IOException;
+	}
+
+	private final static byte OTHER = 0;
+	private final static byte SEPARATOR = 1;
+	private final static byte CHINESE = 2;
+
+	private final static String POSIX_PUNCT = "!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~";
+
+	private final byte[] _types = new byte[Character.MAX_VALUE + 1];
+
+	public Normalizer(String stopwords) {
+		for (int c = 0; c <= Character.MAX_VALUE; ++c) {
+			if (FastBuilder.isChinese((char) c)) {
+				_types[c] = CHINESE;
+			}
+			if (c <= ' ' || c == 0x7F || c == '　' || isPunctuation(c)
+					|| POSIX_PUNCT.indexOf(c) >= 0 || stopwords.indexOf(c) >= 0) {
+				_types[c] = SEPARATOR;
+			}
+		}
+	}
+
+	public boolean isSeparator(char c) {
+		return _types[c] == SEPARATOR;
+	}
+
+	/**
+	 * Feeds every sentence of <code>buf[start, end)</code> that consists of
+	 * Chinese characters only to the handler.
+	 */
+	public void split(char[] buf, int start, int end, SentenceHandler handler) throws IOException {
+		final byte[] types = _types;
+		int sentence = start;
+		boolean chinese = true;
+		for (int i = start; i < end; ++i) {
+			char c = buf[i];
+			byte type = types[c];
+			if (type == OTHER && Character.isHighSurrogate(c) && i + 1 < end
+					&& Character.isLowSurrogate(buf[i + 1])) {
+				if (isPunctuation(Character.toCodePoint(c, buf[i + 1]))) {
+					if (chinese && sentence < i) {
+						handler.sentence(buf, sentence, i);
+					}
+					sentence = i + 2;
+					chinese = true;
+				} else {
+					chinese = false;
+				}
+				++i;
+				continue;
+			}
+			if (type == SEPARATOR) {
+				if (chinese && sentence < i) {
+					handler.sentence(buf, sentence, i);
+				}
+				sentence = i + 1;
+				chinese = true;
+			} else if (type != CHINESE) {
+				chinese = false;
+			}
+		}
+		if (chinese && sentence < end) {
+			handler.sentence(buf, sentence, end);
+		}
+	}
+
+	/**
+	 * Same as regex <code>\pP</code>.
+	 */
+	private static boolean isPunctuation(int codePoint) {
+		switch (Character.getType(codePoint)) {
+		case Character.CONNECTOR_PUNCTUATION:
+		case Character.DASH_PUNCTUATION:
+		case Character.START_PUNCTUATION:
+		case Character.END_PUNCTUATION:
+		case Character.INITIAL_QUOTE_PUNCTUATION:
+		case Character.FINAL_QUOTE_PUNCTUATION:
+		case Character.OTHER_PUNCTUATION:
+			return true;
+		default:
+			return false;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package dict.build;
+
+import com.fasterxml.sort.DataReaderFactory;
+import com.fasterxml.sort.DataWriterFactory;
+
+/**
+ * Format of the frequency and entropy files passed between the stages of
+ * {@link FastBuilder}. The final dictionary is always text.
+ *
+ * @author Jennifer
+ */
+public enum RecordFormat {
+
+	/**
+	 * Tab separated lines, see {@link RecordLineReader} (default).
+	 */
+	TEXT(".data") {
+		@Override
+		public DataReaderFactory<NgramRecord> readerFactory() {
+			return RecordLineReader.factory();
+		}
+
+		@Override
+		public DataWriterFactory<NgramRecord> writerFactory() {
+			return RecordLineWriter.factory();
+		}
+	},
+
+	/**
+	 * Binary records, see {@link RecordReader}; saves parsing and formatting
+	 * numbers in every stage.
+	 */
+	BINARY(".bin") {
+		@Override
+		public DataReaderFactory<NgramRecord> readerFactory() {
+			return RecordReader.factory();
+		}
+
+		@Override
+		public DataWriterFactory<NgramRecord> writerFactory() {
+			return RecordWriter.factory();
+		}
+	};
+
+	private final String suffix;
+
+	private RecordFormat(String suffix) {
+		this.suffix = suffix;
+	}
+
+	/**
+	 * @return file name for the given base name, e.g. <code>freq_ngram_sort.bin</code>
+	 */
+	public String fileName(String name) {
+		return name + suffix;
+	}
+
+	public abstract DataReaderFactory<NgramRecord> readerFactory();
+
+	public abstract DataWriterFactory<NgramRecord> writerFactory();
+}
@@ -0,0 +1,66 @@
+package dict.build;
+
+import java.io.*;
+
+import com.fasterxml.sort.*;
+import com.google.common.base.Charsets;
+
+/**
+ * Reads {@link NgramRecord}s from the text frequency and entropy files:
+ * <code>word \t freq \t entropy</code> or <code>word \t entropy</code>
+ * lines. Other lines are skipped.
+ *
+ * @author Jennifer
+ */
+public class RecordLineReader
+	extends DataReader<NgramRecord>
+{
+
+	protected final BufferedReader _br;
+
+	public RecordLineReader(InputStream in)
+	{
+		_br = new BufferedReader(new InputStreamReader(in, Charsets.UTF_8));
+	}
+
+	public static Factory factory() {
+		return new Factory();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		_br.close();
+	}
+
+	@Override
+	public int estimateSizeInBytes(NgramRecord item)
+	{
+		return 32 + 40 + 2 * item.getWord().length();
+	}
+
+	@Override
+	public NgramRecord readNext() throws IOException
+	{
+		String line;
+		while (null != (line = _br.readLine())) {
+			String[] seg = line.split("\t");
+			if (seg.length == 3) {
+				return new NgramRecord(seg[0], Integer.parseInt(seg[1]), Double.parseDouble(seg[2]));
+			}
+			if (seg.length == 2) {
+				return new NgramRecord(seg[0], NgramRecord.NO_FREQ, Double.parseDouble(seg[1]));
+			}
+		}
+		return null;
+	}
+
+	public static class Factory
+		extends DataReaderFactory<NgramRecord>
+	{
+		@Override
+		public DataReader<NgramRecord> constructReader(InputStream in) {
+			return new RecordLineReader(in);
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package dict.build;
+
+import java.io.*;
+
+import com.fasterxml.sort.*;
+import com.google.common.base.Charsets;
+
+/**
+ * Writes {@link NgramRecord}s as the lines read by {@link RecordLineReader}.
+ *
+ * @author Jennifer
+ */
+public class RecordLineWriter
+	extends DataWriter<NgramRecord>
+{
+
+	protected final BufferedWriter _out;
+
+	public RecordLineWriter(OutputStream out)
+	{
+		_out = new BufferedWriter(new OutputStreamWriter(out, Charsets.UTF_8));
+	}
+
+	public static Factory factory() {
+		return new Factory();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		_out.close();
+	}
+
+	@Override
+	public void writeEntry(NgramRecord item) throws IOException
+	{
+		_out.write(item.getWord());
+		_out.write('\t');
+		if (item.hasFreq()) {
+			_out.write(Integer.toString(item.getFreq()));
+			_out.write('\t');
+		}
+		_out.write(Double.toString(item.getEntropy()));
+		_out.write('\n');
+	}
+
+	public static class Factory
+		extends DataWriterFactory<NgramRecord>
+	{
+		@Override
+		public DataWriter<NgramRecord> constructWriter(OutputStream out) {
+			return new RecordLineWriter(out);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package dict.build;
+
+import java.io.*;
+
+import com.fasterxml.sort.*;
+import com.fasterxml.sort.util.ByteSlice;
+import com.google.common.base.Charsets;
+
+/**
+ * Reader for the binary form of {@link NgramRecord}s written by
+ * {@link RecordWriter}: a 2-byte length and the UTF-8 bytes of the word,
+ * then the frequency as int and the entropy as double.
+ *
+ * @author Jennifer
+ */
+public class RecordReader
+	extends DataReader<NgramRecord>
+{
+
+	protected final DataInputStream _in;
+
+	protected byte[] _word = new byte[64];
+
+	/**
+	 * Whole record, as read by {@link #readRaw}
+	 */
+	protected byte[] _record = new byte[128];
+
+	public RecordReader(InputStream in)
+	{
+		if (!(in instanceof BufferedInputStream)) {
+			in = new BufferedInputStream(in);
+		}
+		_in = new DataInputStream(in);
+	}
+
+	public static Factory factory() {
+		return new Factory();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		_in.close();
+	}
+
+	@Override
+	public int estimateSizeInBytes(NgramRecord item)
+	{
+		// record object, plus String with its char array
+		return 32 + 40 + 2 * item.getWord().length();
+	}
+
+	@Override
+	public NgramRecord readNext() throws IOException
+	{
+		int b = _in.read();
+		if (b < 0) {
+			return null;
+		}
+		int length = (b << 8) | _in.readUnsignedByte();
+		if (_word.length < length) {
+			_word = new byte[length];
+		}
+		_in.readFully(_word, 0, length);
+		String word = new String(_word, 0, length, Charsets.UTF_8);
+		int freq = _in.readInt();
+		return new NgramRecord(word, freq, _in.readDouble());
+	}
+
+	@Override
+	public boolean canReadRaw() {
+		return true;
+	}
+
+	/**
+	 * Reads the next record as is, length prefix included.
+	 */
+	@Override
+	public boolean readRaw(ByteSlice slice) throws IOException
+	{
+		int b = _in.read();
+		if (b < 0) {
+			return false;
+		}
+		int b2 = _in.readUnsignedByte();
+		int size = 2 + ((b << 8) | b2) + 12;
+		if (_record.length < size) {
+			_record = new byte[size];
+		}
+		_record[0] = (byte) b;
+		_record[1] = (byte) b2;
+		_in.readFully(_record, 2, size - 2);
+		slice.set(_record, 0, size);
+		return true;
+	}
+
+	public static class Factory
+		extends DataReaderFactory<NgramRecord>
+	{
+		@Override
+		public DataReader<NgramRecord> constructReader(InputStream in) {
+			return new RecordReader(in);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package dict.build;
+
+import java.util.Comparator;
+
+import com.fasterxml.sort.RawComparator;
+import com.fasterxml.sort.SortConfig;
+import com.fasterxml.sort.Sorter;
+import com.fasterxml.sort.std.ByteArrayComparator;
+
+/**
+ * {@link Sorter} for binary {@link NgramRecord} files, ordering records by
+ * word. Words only hold BMP chars, so this is the byte order the text files
+ * are sorted in, which also allows merging raw records by their word bytes.
+ *
+ * @author Jennifer
+ */
+public class RecordSorter extends Sorter<NgramRecord>
+{
+	public RecordSorter(SortConfig config)
+	{
+		super(config,
+				RecordReader.factory(), RecordWriter.factory(),
+				new WordComparator());
+	}
+
+	private static class WordComparator implements Comparator<NgramRecord>, RawComparator
+	{
+		private final ByteArrayComparator _bytes = new ByteArrayComparator();
+
+		@Override
+		public int compare(NgramRecord o1, NgramRecord o2)
+		{
+			return o1.getWord().compareTo(o2.getWord());
+		}
+
+		@Override
+		public int compareRaw(byte[] b1, int offset1, int length1, byte[] b2, int offset2, int length2)
+		{
+			return _bytes.compareRaw(b1, offset1 + 2, _wordLength(b1, offset1),
+					b2, offset2 + 2, _wordLength(b2, offset2));
+		}
+
+		private static int _wordLength(byte[] record, int offset)
+		{
+			return ((record[offset] & 0xFF) << 8) | (record[offset + 1] & 0xFF);
+		}
+	}
+}
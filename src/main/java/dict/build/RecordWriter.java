@@ -0,0 +1,69 @@
+package dict.build;
+
+import java.io.*;
+
+import com.fasterxml.sort.*;
+import com.google.common.base.Charsets;
+
+/**
+ * Writes {@link NgramRecord}s in binary form, see {@link RecordReader}.
+ *
+ * @author Jennifer
+ */
+public class RecordWriter
+	extends DataWriter<NgramRecord>
+{
+
+	protected final DataOutputStream _out;
+
+	public RecordWriter(OutputStream out)
+	{
+		if (!(out instanceof BufferedOutputStream)) {
+			out = new BufferedOutputStream(out);
+		}
+		_out = new DataOutputStream(out);
+	}
+
+	public static Factory factory() {
+		return new Factory();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		_out.close();
+	}
+
+	@Override
+	public void writeEntry(NgramRecord item) throws IOException
+	{
+		byte[] word = item.getWord().getBytes(Charsets.UTF_8);
+		if (word.length > 0xFFFF) {
+			throw new IOException("Word too long for record: " + word.length + " bytes");
+		}
+		_out.writeShort(word.length);
+		_out.write(word);
+		_out.writeInt(item.getFreq());
+		_out.writeDouble(item.getEntropy());
+	}
+
+	@Override
+	public boolean canWriteRaw() {
+		return true;
+	}
+
+	@Override
+	public void writeRaw(byte[] buffer, int offset, int length) throws IOException
+	{
+		_out.write(buffer, offset, length);
+	}
+
+	public static class Factory
+		extends DataWriterFactory<NgramRecord>
+	{
+		@Override
+		public DataWriter<NgramRecord> constructWriter(OutputStream out) {
+			return new RecordWriter(out);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package dict.build;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.fasterxml.sort.DataWriter;
+
+/**
+ * Computes frequency and entropy of every prefix of sorted n-grams while
+ * reading them, keeping only the prefixes of the last n-gram open. A prefix
+ * is finished as soon as an n-gram no longer starts with it, so memory
+ * depends on n-gram length and alphabet size, not on the input.
+ *<p>
+ * Prefixes are written deepest first, i.e. not in sorted order. A counter
+ * for left entropies is fed reversed n-grams and, like
+ * {@link NgramCounter}, writes its words back in reading order, with
+ * entropy only.
+ *
+ * @author Jennifer
+ */
+public class SortedNgramCounter {
+
+	private final DataWriter<NgramRecord> _out;
+
+	private final boolean _reversed;
+
+	/**
+	 * Last n-gram; open prefix of level <code>d</code> is its first
+	 * <code>d</code> chars.
+	 */
+	private char[] _path = new char[16];
+
+	private int _pathLength;
+
+	/**
+	 * Number of open prefixes, levels <code>1.._depth</code>.
+	 */
+	private int _depth;
+
+	/*
+	 * Right neighbours of each open prefix, in ascending order, with counts.
+	 */
+	private char[][] _neighbours = new char[16][];
+	private int[][] _counts = new int[16][];
+	private int[] _size = new int[16];
+
+	public SortedNgramCounter(DataWriter<NgramRecord> out, boolean reversed) {
+		_out = out;
+		_reversed = reversed;
+	}
+
+	/**
+	 * Counts the n-gram <code>buf[start, end)</code>, which must not sort
+	 * before the previous one.
+	 */
+	public void ngram(char[] buf, int start, int end) throws IOException {
+		ngram(buf, start, end, 1);
+	}
+
+	/**
+	 * Counts the n-gram <code>buf[start, end)</code> <code>times</code> times.
+	 */
+	public void ngram(char[] buf, int start, int end, int times) throws IOException {
+		int len = end - start;
+		int max = Math.min(len, _pathLength);
+		int shared = 0;
+		while (shared < max && buf[start + shared] == _path[shared]) {
+			++shared;
+		}
+		if (shared < max ? buf[start + shared] < _path[shared] : len < _pathLength) {
+			throw new IOException("N-grams not sorted: " + new String(buf, start, len) + " after "
+					+ new String(_path, 0, _pathLength));
+		}
+		// prefixes longer than the shared part are complete
+		while (_depth > shared) {
+			_write(_depth--);
+		}
+		if (_path.length < len) {
+			_path = Arrays.copyOf(_path, Math.max(len, _path.length << 1));
+		}
+		System.arraycopy(buf, start + shared, _path, shared, len - shared);
+		_pathLength = len;
+		for (int d = 1; d < len; ++d) {
+			char c = buf[start + d];
+			if (d > _depth) {
+				_open(d);
+			}
+			int n = _size[d];
+			if (n > 0 && _neighbours[d][n - 1] == c) {
+				_counts[d][n - 1] += times;
+			} else {
+				if (n == _counts[d].length) {
+					_neighbours[d] = Arrays.copyOf(_neighbours[d], n << 1);
+					_counts[d] = Arrays.copyOf(_counts[d], n << 1);
+				}
+				_neighbours[d][n] = c;
+				_counts[d][n] = times;
+				_size[d] = n + 1;
+			}
+		}
+	}
+
+	/**
+	 * Writes the prefixes still open.
+	 */
+	public void flush() throws IOException {
+		while (_depth > 0) {
+			_write(_depth--);
+		}
+	}
+
+	private void _open(int d) {
+		if (d == _size.length) {
+			int capacity = d << 1;
+			_neighbours = Arrays.copyOf(_neighbours, capacity);
+			_counts = Arrays.copyOf(_counts, capacity);
+			_size = Arrays.copyOf(_size, capacity);
+		}
+		if (null == _counts[d]) {
+			_neighbours[d] = new char[16];
+			_counts[d] = new int[16];
+		}
+		_size[d] = 0;
+		_depth = d;
+	}
+
+	private void _write(int d) throws IOException {
+		int n = _size[d];
+		int freq = 0;
+		for (int i = 0; i < n; ++i) {
+			freq += _counts[d][i];
+		}
+		double entropy = FastBuilder.entropy(_counts[d], n, freq);
+		if (_reversed) {
+			char[] word = new char[d];
+			for (int i = 0; i < d; ++i) {
+				word[i] = _path[d - 1 - i];
+			}
+			_out.writeEntry(new NgramRecord(new String(word), NgramRecord.NO_FREQ, entropy));
+		} else {
+			_out.writeEntry(new NgramRecord(new String(_path, 0, d), freq, entropy));
+		}
+	}
+}
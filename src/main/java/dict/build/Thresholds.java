@@ -0,0 +1,127 @@
+package dict.build;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Cutoffs for the scores of candidate words in
+ * {@link FastBuilder#extractWords}: a word is kept if its PMI, entropy and
+ * position probability all reach them.
+ *
+ * @author Jennifer
+ */
+public class Thresholds {
+
+	public final static Thresholds DEFAULT = new Thresholds(1, 2, 0.1);
+
+	private final double minPmi;
+
+	private final double minEntropy;
+
+	private final double minPosProb;
+
+	public Thresholds(double minPmi, double minEntropy, double minPosProb) {
+		this.minPmi = minPmi;
+		this.minEntropy = minEntropy;
+		this.minPosProb = minPosProb;
+	}
+
+	/**
+	 * Parses cutoffs given as <code>pmi,entropy,posprob</code>.
+	 */
+	public static Thresholds parse(String spec) {
+		String[] seg = spec.split(",");
+		if (seg.length != 3) {
+			throw new IllegalArgumentException("Expected pmi,entropy,posprob, got: " + spec);
+		}
+		return new Thresholds(Double.parseDouble(seg[0].trim()), Double.parseDouble(seg[1].trim()),
+				Double.parseDouble(seg[2].trim()));
+	}
+
+	/**
+	 * Parses a grid of cutoffs like <code>pmi=1,2;e=2,3;pp=0.1</code>, giving
+	 * every combination of the values; names left out keep their default.
+	 * Values repeated for a name are used once, so that no two combinations
+	 * get the same {@link #name}.
+	 */
+	public static List<Thresholds> parseGrid(String spec) {
+		Collection<Double> pmis = Collections.singleton(DEFAULT.minPmi);
+		Collection<Double> entropies = Collections.singleton(DEFAULT.minEntropy);
+		Collection<Double> posProbs = Collections.singleton(DEFAULT.minPosProb);
+		for (String part : spec.split(";")) {
+			part = part.trim();
+			if (part.isEmpty()) continue;
+			int eq = part.indexOf('=');
+			if (eq < 0) {
+				throw new IllegalArgumentException("Expected name=values, got: " + part);
+			}
+			String name = part.substring(0, eq).trim();
+			Collection<Double> values = parseValues(part.substring(eq + 1));
+			if ("pmi".equals(name)) {
+				pmis = values;
+			} else if ("e".equals(name)) {
+				entropies = values;
+			} else if ("pp".equals(name)) {
+				posProbs = values;
+			} else {
+				throw new IllegalArgumentException("Unknown threshold '" + name + "', expected pmi, e or pp");
+			}
+		}
+		List<Thresholds> grid = Lists.newArrayList();
+		for (double pmi : pmis) {
+			for (double e : entropies) {
+				for (double pp : posProbs) {
+					grid.add(new Thresholds(pmi, e, pp));
+				}
+			}
+		}
+		return grid;
+	}
+
+	private static Collection<Double> parseValues(String values) {
+		Set<Double> result = new LinkedHashSet<Double>();
+		for (String value : values.split(",")) {
+			// adding 0 turns -0 into 0, which has the same name
+			result.add(Double.parseDouble(value.trim()) + 0.0);
+		}
+		return result;
+	}
+
+	public boolean accepts(double pmi, double entropy, double posProb) {
+		return !(pmi < minPmi || entropy < minEntropy || posProb < minPosProb);
+	}
+
+	public double getMinPmi() {
+		return minPmi;
+	}
+
+	public double getMinEntropy() {
+		return minEntropy;
+	}
+
+	public double getMinPosProb() {
+		return minPosProb;
+	}
+
+	/**
+	 * @return name usable in file names, e.g. <code>pmi1_e2_pp0.1</code>
+	 */
+	public String name() {
+		return "pmi" + format(minPmi) + "_e" + format(minEntropy) + "_pp" + format(minPosProb);
+	}
+
+	private static String format(double value) {
+		return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+	}
+
+	@Override
+	public String toString() {
+		return "pmi >= " + minPmi + ", e >= " + minEntropy + ", pp >= " + minPosProb;
+	}
+}